@@ -0,0 +1,416 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)AdmissionControl.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoTimeoutException;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Keeps the client from overwhelming the cluster. Every operation
+ * started through an ObservableSubscriber, and every request of a
+ * hedged read, must first take a token from
+ * a token bucket, which caps the rate of operations, and then a slot
+ * under a concurrency limit, which caps how many are in flight. Reads
+ * and writes have budgets of their own, so a burst of writes cannot
+ * starve reads or the other way round.
+ *
+ * The concurrency limit adapts to the latency the server shows, in the
+ * manner of TCP Vegas: the lowest time to first response seen is taken
+ * as the unloaded latency, and limit * (1 - lowest / latest) estimates
+ * how many operations are queued on the server rather than being
+ * worked on. The limit grows while that queue is short and shrinks
+ * once it is long, by steps of about log10 of the limit. The lowest
+ * latency creeps up slowly so that a lasting change in the unloaded
+ * latency is eventually accepted. A failed operation cuts the limit by
+ * a tenth. The limit only grows while at least half of it is in use,
+ * so an idle client does not earn a limit it has never tested.
+ *
+ * Waiting for admission blocks the thread that subscribes, which in
+ * this project is always the caller's, never the driver's. A caller
+ * that cannot be admitted before its deadline fails with a timeout.
+ * The hedge of a hedged read is sent from a shared timer thread, so it
+ * never waits: it is sent only if it can be admitted at once.
+ */
+final class AdmissionControl {
+    /**
+     * The budgets operations are charged to.
+     */
+    enum Budget {
+        READ,
+        WRITE
+    }
+
+    private static volatile AdmissionControl instance = new AdmissionControl(new Properties());
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final boolean enabled;
+    private final Map<Budget, Limiter> limiters = new EnumMap<>(Budget.class);
+
+    AdmissionControl(final Properties properties) {
+        super();
+
+        this.enabled = Boolean.parseBoolean(properties.getProperty("mongodb.admission.enabled", "false"));
+
+        for (final var budget : Budget.values())
+            this.limiters.put(budget, new Limiter(budget, properties));
+    }
+
+    /**
+     * Replace the process-wide admission control with one configured
+     * from the mongodb.admission properties.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        instance = new AdmissionControl(properties);
+    }
+
+    static AdmissionControl getInstance() {
+        return instance;
+    }
+
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Wait for a token and a concurrency slot from a budget.
+     *
+     * @param   budget          The budget to charge
+     * @param   deadlineNanos   The System.nanoTime() by which it must be admitted
+     * @return                  The permit to signal and release, or null when disabled
+     * @throws  MongoTimeoutException   When the operation was not admitted in time
+     */
+    Permit acquire(final Budget budget, final long deadlineNanos) {
+        return this.enabled ? this.limiters.get(budget).acquire(deadlineNanos) : null;
+    }
+
+    /**
+     * Take a token and a concurrency slot from a budget only if both
+     * are free now. Check isEnabled() first.
+     *
+     * @param   budget  The budget to charge
+     * @return          The permit to signal and release, or null if none is free
+     */
+    Permit tryAcquire(final Budget budget) {
+        return this.limiters.get(budget).tryAcquire();
+    }
+
+    void logMetrics() {
+        if (this.enabled && this.logger.isInfoEnabled())
+            for (final var limiter : this.limiters.values())
+                limiter.logMetrics(this.logger);
+    }
+
+    /**
+     * One admitted operation. Signal when the first response arrives
+     * and release when the operation ends; both may be called more
+     * than once.
+     */
+    static final class Permit {
+        private final Limiter limiter;
+        private final long admittedNanos;
+        private final AtomicBoolean signalled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(final Limiter limiter) {
+            super();
+
+            this.limiter = limiter;
+            this.admittedNanos = System.nanoTime();
+        }
+
+        void signal() {
+            if (!this.signalled.get() && this.signalled.compareAndSet(false, true))
+                this.limiter.sample(System.nanoTime() - this.admittedNanos);
+        }
+
+        void release(final boolean failed) {
+            if (this.released.compareAndSet(false, true))
+                this.limiter.release(failed);
+        }
+    }
+
+    /*
+     * The token bucket and adaptive limit of one budget. The bucket is
+     * guarded by the limiter's monitor, which is only ever held for a
+     * short update. The limit and the operations in flight are guarded
+     * by a ReentrantLock, whose condition callers wait on for a slot;
+     * waiting on a monitor would pin a virtual thread to its carrier.
+     */
+    private static final class Limiter {
+        private static final double MIN_RTT_DRIFT = 1.001;
+
+        private final Budget budget;
+        private final double ratePerNano;
+        private final double burst;
+        private final int minLimit;
+        private final int maxLimit;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder concurrencyLimited = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition slotFreed = this.lock.newCondition();
+        private double tokens;
+        private long refilledNanos;
+        private double limit;
+        private double minRttNanos;
+        private double averageRttNanos;
+        private int inFlight;
+        private int maxInFlight;
+
+        private Limiter(final Budget budget, final Properties properties) {
+            super();
+
+            final var prefix = "mongodb.admission." + budget.name().toLowerCase(Locale.ROOT) + ".";
+            final var ratePerSecond = Double.parseDouble(properties.getProperty(prefix + "ratePerSecond", budget == Budget.READ ? "1000" : "500"));
+
+            this.budget = budget;
+            this.ratePerNano = ratePerSecond / 1e9;
+            this.burst = Double.parseDouble(properties.getProperty(prefix + "burst", budget == Budget.READ ? "200" : "100"));
+            this.minLimit = Integer.parseInt(properties.getProperty(prefix + "minConcurrency", "4"));
+            this.maxLimit = Integer.parseInt(properties.getProperty(prefix + "maxConcurrency", "200"));
+            this.limit = Integer.parseInt(properties.getProperty(prefix + "initialConcurrency", "20"));
+
+            if (ratePerSecond <= 0 || this.burst < 1)
+                throw new IllegalArgumentException("The " + budget + " rate must be positive and the burst at least 1");
+
+            if (this.minLimit < 1 || this.maxLimit < this.minLimit || this.limit < this.minLimit || this.limit > this.maxLimit)
+                throw new IllegalArgumentException("The " + budget + " concurrency must satisfy 1 <= min <= initial <= max");
+
+            this.tokens = this.burst;
+            this.refilledNanos = System.nanoTime();
+        }
+
+        private Permit acquire(final long deadlineNanos) {
+            this.takeToken(deadlineNanos);
+
+            this.lock.lock();
+
+            try {
+                var waited = false;
+
+                while (this.inFlight >= (int) this.limit) {
+                    final var remaining = deadlineNanos - System.nanoTime();
+
+                    if (remaining <= 0) {
+                        this.timeouts.increment();
+
+                        throw new MongoTimeoutException("Timed out waiting for " + this.budget + " concurrency");
+                    }
+
+                    waited = true;
+
+                    try {
+                        this.slotFreed.awaitNanos(remaining);
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+
+                        throw new MongoTimeoutException("Interrupted waiting for " + this.budget + " concurrency");
+                    }
+                }
+
+                if (waited)
+                    this.concurrencyLimited.increment();
+
+                this.inFlight++;
+                this.maxInFlight = Math.max(this.maxInFlight, this.inFlight);
+            } finally {
+                this.lock.unlock();
+            }
+
+            this.admitted.increment();
+
+            return new Permit(this);
+        }
+
+        private Permit tryAcquire() {
+            this.lock.lock();
+
+            try {
+                if (this.inFlight >= (int) this.limit)
+                    return null;
+
+                synchronized (this) {
+                    this.refill(System.nanoTime());
+
+                    if (this.tokens < 1)
+                        return null;
+
+                    this.tokens--;
+                }
+
+                this.inFlight++;
+                this.maxInFlight = Math.max(this.maxInFlight, this.inFlight);
+            } finally {
+                this.lock.unlock();
+            }
+
+            this.admitted.increment();
+
+            return new Permit(this);
+        }
+
+        private void takeToken(final long deadlineNanos) {
+            var waited = false;
+
+            while (true) {
+                final long waitNanos;
+
+                synchronized (this) {
+                    final var now = System.nanoTime();
+
+                    this.refill(now);
+
+                    if (this.tokens >= 1) {
+                        this.tokens--;
+
+                        if (waited)
+                            this.rateLimited.increment();
+
+                        return;
+                    }
+
+                    waitNanos = (long) Math.ceil((1 - this.tokens) / this.ratePerNano);
+
+                    if (now + waitNanos - deadlineNanos > 0) {
+                        this.timeouts.increment();
+
+                        throw new MongoTimeoutException("Timed out waiting for a " + this.budget + " token");
+                    }
+                }
+
+                waited = true;
+
+                LockSupport.parkNanos(waitNanos);
+
+                if (Thread.currentThread().isInterrupted())
+                    throw new MongoTimeoutException("Interrupted waiting for a " + this.budget + " token");
+            }
+        }
+
+        private void refill(final long now) {
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.refilledNanos) * this.ratePerNano);
+            this.refilledNanos = now;
+        }
+
+        private void sample(final long rttNanos) {
+            final var rtt = Math.max(1, rttNanos);
+
+            this.lock.lock();
+
+            try {
+                this.averageRttNanos = this.averageRttNanos == 0 ? rtt : this.averageRttNanos + (rtt - this.averageRttNanos) / 100;
+                this.minRttNanos = this.minRttNanos == 0 ? rtt : Math.min(rtt, this.minRttNanos * MIN_RTT_DRIFT);
+
+                final var queued = this.limit * (1 - this.minRttNanos / rtt);
+                final var step = Math.max(1, Math.log10(this.limit));
+
+                if (queued > 6 * step) {
+                    this.setLimit(this.limit - step);
+                } else if (queued < 3 * step && this.inFlight >= this.limit / 2) {
+                    // Grow only when the limit is actually being used
+
+                    this.setLimit(this.limit + (queued <= step ? 2 * step : step));
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void release(final boolean failed) {
+            this.lock.lock();
+
+            try {
+                this.inFlight--;
+
+                if (failed) {
+                    this.failures.increment();
+                    this.setLimit(this.limit * 0.9);
+                }
+
+                this.slotFreed.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /* Call with the lock held */
+
+        private void setLimit(final double next) {
+            final var previous = (int) this.limit;
+
+            this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, next));
+
+            if ((int) this.limit > previous)
+                this.slotFreed.signalAll();
+        }
+
+        private void logMetrics(final XLogger logger) {
+            this.lock.lock();
+
+            try {
+                if (this.admitted.sum() > 0)
+                    logger.info("{} admission: {} admitted, {} waited for a token, {} waited for concurrency, {} timed out, {} failed; limit {}, peak in flight {}, average latency {} ms, lowest {} ms",
+                            this.budget,
+                            this.admitted.sum(),
+                            this.rateLimited.sum(),
+                            this.concurrencyLimited.sum(),
+                            this.timeouts.sum(),
+                            this.failures.sum(),
+                            (int) this.limit,
+                            this.maxInFlight,
+                            String.format("%.1f", this.averageRttNanos / 1e6),
+                            String.format("%.1f", this.minRttNanos / 1e6));
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
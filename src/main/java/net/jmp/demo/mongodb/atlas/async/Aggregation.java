@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Aggregation.java  0.10.0  10/19/2026
  * (#)Aggregation.java  0.9.0   02/03/2024
  *
  * @author    Jonathan Parker
- * @version   0.9.0
+ * @version   0.10.0
  * @since     0.9.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -31,6 +32,7 @@ package net.jmp.demo.mongodb.atlas.async;
  */
 
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
 
 import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
@@ -38,6 +40,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 
 import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.InsertOneResult;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 
@@ -46,17 +49,24 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import java.util.concurrent.TimeUnit;
+
 import org.bson.Document;
 
+import org.bson.conversions.Bson;
+
 import org.slf4j.LoggerFactory;
 
 import org.slf4j.ext.XLogger;
 
 final class Aggregation {
     private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final Properties properties;
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final String viewCollectionName;
+    private final String watermarksCollectionName;
 
     class DocumentPrinter extends ConsumerSubscriber<Document> {
         DocumentPrinter(final String methodName) {
@@ -70,10 +80,13 @@ final class Aggregation {
     Aggregation(final Properties properties, final MongoClient mongoClient) {
         super();
 
+        this.properties = properties;
         this.mongoClient = mongoClient;
 
         this.dbName = properties.getProperty("mongodb.aggregation.db", "training");
         this.collectionName = properties.getProperty("mongodb.aggregation.collection", "restaurants");
+        this.viewCollectionName = properties.getProperty("mongodb.aggregation.view.collection", "bakeriesByStars");
+        this.watermarksCollectionName = properties.getProperty("mongodb.aggregation.watermarks.collection", "watermarks");
     }
 
     void run() {
@@ -85,6 +98,9 @@ final class Aggregation {
         try {
             this.insertData();
             this.basic();
+            this.basicLocally();
+            this.materializedView();
+            this.streaming();
             this.explain();
             this.expression();
         } finally {
@@ -103,6 +119,8 @@ final class Aggregation {
         final List<String> collections = new ArrayList<>();
         final ConsumerSubscriber<String> consumerSubscriber = new ConsumerSubscriber<>(collections::add);   // string -> collections.add(string)
 
+        consumerSubscriber.recording(new MongoNamespace(this.dbName, this.collectionName), "listCollectionNames", null, 0);
+
         database.listCollectionNames().subscribe(consumerSubscriber);
 
         consumerSubscriber.await();
@@ -110,7 +128,9 @@ final class Aggregation {
         if (!collections.contains(this.collectionName)) {
             this.logger.info("Collection {} not found; creating it...", this.collectionName);
 
-            final OperationSubscriber<Void> voidSubscriber = new OperationSubscriber<>();
+            final OperationSubscriber<Void> voidSubscriber = new OperationSubscriber<>(new MongoNamespace(this.dbName, this.collectionName));
+
+            voidSubscriber.recording(new MongoNamespace(this.dbName, this.collectionName), "createCollection", null, 0);
 
             database.createCollection(this.collectionName).subscribe(voidSubscriber);
 
@@ -143,7 +163,9 @@ final class Aggregation {
                 new Document("name", "XYZ Steak Buffet").append("contact", new Document().append("phone", "229-555-0197").append("email", "XYZSteakBuffet@example.org").append("location", Arrays.asList(-73.9799932, 40.7660886))).append("stars", 3).append("categories", Arrays.asList("Steak", "Salad", "Chinese"))
         );
 
-        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
 
         collection.insertMany(documents).subscribe(subscriber);
 
@@ -170,16 +192,18 @@ final class Aggregation {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("aggregation", database.getCollection(this.collectionName));
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.AGGREGATE);
         final var subscriber = new DocumentPrinter("basic");
 
-        collection.aggregate(
-                Arrays.asList(
-                        Aggregates.match(Filters.eq("categories", "Bakery")),
-                        Aggregates.group("$stars", Accumulators.sum("count", 1))
-                )
-        ).subscribe(subscriber);
+        subscriber.recording(collection.getNamespace(), "aggregate", null, 0);
+        subscriber.routed("aggregation");
+        subscriber.deadline(deadline);
+
+        collection.aggregate(this.bakeriesByStars())
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(subscriber);
 
         subscriber.await();
 
@@ -194,6 +218,100 @@ final class Aggregation {
         this.logger.exit();
     }
 
+    private void basicLocally() {
+        this.logger.entry();
+
+        // Answer the same aggregation from a locally cached copy of the collection
+
+        final var localAggregation = LocalAggregation.load(this.mongoClient,
+                this.dbName,
+                this.collectionName,
+                this.logger);
+
+        final var start = System.nanoTime();
+        final var results = localAggregation.aggregate(this.bakeriesByStars());
+        final var elapsed = System.nanoTime() - start;
+
+        if (this.logger.isInfoEnabled()) {
+            results.forEach(document -> this.logger.info("basicLocally: {}", document.toJson()));
+
+            this.logger.info("Aggregated {} document(s) locally in {} microseconds", localAggregation.size(), elapsed / 1_000);
+        }
+
+        this.logger.exit();
+    }
+
+    private void materializedView() {
+        this.logger.entry();
+
+        final var view = new MaterializedView(this.mongoClient,
+                this.dbName,
+                this.collectionName,
+                this.viewCollectionName,
+                this.watermarksCollectionName,
+                "_id",
+                this.bakeriesByStars(),
+                MaterializedView.additive("count"));
+
+        try {
+            view.refresh();
+
+            // Only the new bakery is aggregated by the second refresh
+
+            final var database = this.mongoClient.getDatabase(this.dbName);
+            final var collection = database.getCollection(this.collectionName);
+            final var document = new Document("name", "Sugar Loaf Bakery").append("stars", 5).append("categories", Arrays.asList("Bakery", "Bread"));
+
+            final ObservableSubscriber<InsertOneResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "insertOne", null, 1);
+
+            collection.insertOne(document).subscribe(subscriber);
+
+            subscriber.await();
+
+            view.refresh();
+
+            Helpers.printAllDocuments(this.mongoClient,
+                    this.dbName,
+                    view.getViewCollectionName(),
+                    this.logger);
+        } finally {
+            view.drop();
+        }
+
+        this.logger.exit();
+    }
+
+    private void streaming() {
+        this.logger.entry();
+
+        final var runner = new AggregationRunner(this.properties,
+                this.mongoClient,
+                this.dbName,
+                this.collectionName);
+
+        runner.run(this.bakeriesByStars(), document -> {
+            if (this.logger.isInfoEnabled())
+                this.logger.info("streaming: {}", document.toJson());
+        });
+
+        this.logger.exit();
+    }
+
+    private List<Bson> bakeriesByStars() {
+        this.logger.entry();
+
+        final List<Bson> pipeline = Arrays.asList(
+                Aggregates.match(Filters.eq("categories", "Bakery")),
+                Aggregates.group("$stars", Accumulators.sum("count", 1))
+        );
+
+        this.logger.exit(pipeline);
+
+        return pipeline;
+    }
+
     private void explain() {
         this.logger.entry();
 
@@ -238,10 +356,15 @@ final class Aggregation {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("aggregation", database.getCollection(this.collectionName));
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.AGGREGATE);
         final var subscriber = new DocumentPrinter("expression");
 
+        subscriber.recording(collection.getNamespace(), "aggregate", null, 0);
+        subscriber.routed("aggregation");
+        subscriber.deadline(deadline);
+
         collection.aggregate(
                 List.of(
                         Aggregates.project(
@@ -255,7 +378,8 @@ final class Aggregation {
                                 )
                         )
                 )
-        ).subscribe(subscriber);
+        ).maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(subscriber);
 
         subscriber.await();
 
@@ -271,7 +395,9 @@ final class Aggregation {
         final var database = this.mongoClient.getDatabase(this.dbName);
         final var collection = database.getCollection(this.collectionName);
 
-        final OperationSubscriber<Void> voidSubscriber = new OperationSubscriber<>();
+        final OperationSubscriber<Void> voidSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        voidSubscriber.recording(collection.getNamespace(), "drop", null, 0);
 
         collection.drop().subscribe(voidSubscriber);
 
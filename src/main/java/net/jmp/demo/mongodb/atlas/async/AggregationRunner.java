@@ -0,0 +1,117 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)AggregationRunner.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.List;
+import java.util.Properties;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Runs an aggregation with allowDiskUse and a configurable cursor
+ * batch size, streaming the results into a consumer rather than
+ * buffering them. Reports the time to the first document separately
+ * from the total drain time. The run is bounded by the AGGREGATE
+ * deadline, which the server also receives as maxTimeMS, and is made
+ * on the analytics read route, which may be served by a secondary.
+ */
+final class AggregationRunner {
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final int batchSize;
+    private final boolean allowDiskUse;
+
+    AggregationRunner(final Properties properties,
+                      final MongoClient mongoClient,
+                      final String dbName,
+                      final String collectionName) {
+        super();
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.aggregation.batchSize", "100"));
+        this.allowDiskUse = Boolean.parseBoolean(properties.getProperty("mongodb.aggregation.allowDiskUse", "true"));
+    }
+
+    StreamingSubscriber.Timings run(final List<? extends Bson> pipeline, final Consumer<Document> consumer) {
+        this.logger.entry(pipeline, consumer);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = ReadRouter.getInstance().route("analytics", database.getCollection(this.collectionName));
+
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.AGGREGATE);
+        final var subscriber = new StreamingSubscriber<>(this.batchSize, consumer);
+
+        subscriber.recording(collection.getNamespace(), "aggregate", null, this.batchSize);
+        subscriber.routed("analytics");
+        subscriber.deadline(deadline);
+
+        collection.aggregate(pipeline)
+                .allowDiskUse(this.allowDiskUse)
+                .batchSize(this.batchSize)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        final var timings = subscriber.getTimings();
+
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("Streamed {} document(s) from {}.{}: first document after {} ms, drained after {} ms",
+                    timings.items(),
+                    this.dbName,
+                    this.collectionName,
+                    TimeUnit.NANOSECONDS.toMillis(timings.timeToFirstItemNanos()),
+                    TimeUnit.NANOSECONDS.toMillis(timings.totalNanos()));
+        }
+
+        this.logger.exit(timings);
+
+        return timings;
+    }
+}
@@ -0,0 +1,427 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ArrayUpdateBatch.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.bulk.BulkWriteResult;
+
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import java.util.function.Function;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Collects element-level changes to the arrays of one document and
+ * compiles them into as few update documents as MongoDB allows:
+ * pushes become one $push with $each (and $slice), increments and
+ * multiplications of the same element are folded together, and the
+ * conditions of filtered updates become one combined arrayFilters
+ * list. Changes that touch the same array in ways a single update may
+ * not combine are moved to a following update, preserving the order
+ * in which they were added; all of the updates then go to the server
+ * in one bulk write.
+ *
+ * The document is only sent back when it is asked for.
+ */
+final class ArrayUpdateBatch {
+    private static final String INC = "$inc";
+    private static final String MUL = "$mul";
+    private static final String SET = "$set";
+    private static final String PUSH = "$push";
+
+    /*
+     * One change: an operator applied to an array field, either to
+     * the whole array (no selector) or to the elements the selector
+     * picks: a concrete index, $[] or $[identifier].
+     */
+    private static final class Change {
+        private final String operator;
+        private final String field;
+        private final String selector;
+        private final Bson arrayFilter;
+        private Object value;
+        private final List<Object> values = new ArrayList<>();
+        private Integer slice;
+
+        private Change(final String operator, final String field, final String selector, final Bson arrayFilter) {
+            this.operator = operator;
+            this.field = field;
+            this.selector = selector;
+            this.arrayFilter = arrayFilter;
+        }
+
+        private String path() {
+            return this.selector == null ? this.field : this.field + "." + this.selector;
+        }
+
+        private boolean isConcreteIndex() {
+            return this.selector != null && !this.selector.startsWith("$");
+        }
+
+        /*
+         * Pushes only merge when they keep the same $slice, since one
+         * $slice is applied after all of the merged values.
+         */
+        private boolean canMergeWith(final Change other) {
+            return this.operator.equals(other.operator)
+                    && this.path().equals(other.path())
+                    && this.arrayFilter == null
+                    && (!PUSH.equals(this.operator) || Objects.equals(this.slice, other.slice));
+        }
+
+        private boolean conflictsWith(final Change other) {
+            final var sameArray = this.field.equals(other.field)
+                    || this.field.startsWith(other.field + ".")
+                    || other.field.startsWith(this.field + ".");
+
+            if (!sameArray)
+                return false;
+
+            return !(this.isConcreteIndex() && other.isConcreteIndex() && !this.selector.equals(other.selector));
+        }
+    }
+
+    record CompiledUpdate(Document update, List<Bson> arrayFilters) {
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final Bson filter;
+    private final List<List<Change>> rounds = new ArrayList<>();
+    private int identifiers;
+
+    ArrayUpdateBatch(final MongoClient mongoClient,
+                     final String dbName,
+                     final String collectionName,
+                     final Bson filter) {
+        super();
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+        this.filter = filter;
+    }
+
+    ArrayUpdateBatch push(final String field, final List<?> values) {
+        return this.push(field, values, null);
+    }
+
+    /**
+     * Append values, keeping only the last (negative slice) or first
+     * (positive slice) elements so that the array stays bounded.
+     *
+     * @param   field   The array field
+     * @param   values  The values to append
+     * @param   slice   The $slice, or null to keep every element
+     * @return          This batch
+     */
+    ArrayUpdateBatch push(final String field, final List<?> values, final Integer slice) {
+        final var change = new Change(PUSH, field, null, null);
+
+        change.values.addAll(values);
+        change.slice = slice;
+
+        this.add(change);
+
+        return this;
+    }
+
+    ArrayUpdateBatch incAt(final String field, final int index, final Number amount) {
+        return this.addValue(new Change(INC, field, Integer.toString(index), null), amount);
+    }
+
+    ArrayUpdateBatch setAt(final String field, final int index, final Object value) {
+        return this.addValue(new Change(SET, field, Integer.toString(index), null), value);
+    }
+
+    ArrayUpdateBatch incAll(final String field, final Number amount) {
+        return this.addValue(new Change(INC, field, "$[]", null), amount);
+    }
+
+    ArrayUpdateBatch mulAll(final String field, final Number factor) {
+        return this.addValue(new Change(MUL, field, "$[]", null), factor);
+    }
+
+    /**
+     * Increment the elements that satisfy a condition. The condition
+     * is built from the array filter identifier it is given, for
+     * example identifier -> Filters.lt(identifier, 30).
+     *
+     * @param   field       The array field
+     * @param   condition   Builds the array filter from its identifier
+     * @param   amount      The increment
+     * @return              This batch
+     */
+    ArrayUpdateBatch incWhere(final String field, final Function<String, Bson> condition, final Number amount) {
+        final var identifier = this.nextIdentifier();
+
+        return this.addValue(new Change(INC, field, "$[" + identifier + "]", condition.apply(identifier)), amount);
+    }
+
+    ArrayUpdateBatch setWhere(final String field, final Function<String, Bson> condition, final Object value) {
+        final var identifier = this.nextIdentifier();
+
+        return this.addValue(new Change(SET, field, "$[" + identifier + "]", condition.apply(identifier)), value);
+    }
+
+    /**
+     * The number of update documents the batch compiles to.
+     *
+     * @return  int
+     */
+    int size() {
+        return this.rounds.size();
+    }
+
+    /**
+     * Send the batch to the server.
+     *
+     * @param   returnDocument  Whether to return the document as it is after the updates
+     * @return                  The document if it was asked for and found
+     */
+    Optional<Document> apply(final boolean returnDocument) {
+        Trace.entry(this.logger, returnDocument);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var compiled = this.compile();
+
+        Document result = null;
+
+        if (compiled.size() == 1 && returnDocument) {
+            final var options = new FindOneAndUpdateOptions()
+                    .returnDocument(ReturnDocument.AFTER)
+                    .arrayFilters(compiled.getFirst().arrayFilters());
+
+            final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "findOneAndUpdate", this.filter, 0);
+
+            collection.findOneAndUpdate(this.filter, compiled.getFirst().update(), options).subscribe(subscriber);
+
+            result = subscriber.first();
+        } else if (compiled.size() == 1) {
+            final var options = new UpdateOptions().arrayFilters(compiled.getFirst().arrayFilters());
+
+            final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "updateOne", this.filter, 0);
+
+            collection.updateOne(this.filter, compiled.getFirst().update(), options).subscribe(subscriber);
+
+            subscriber.await();
+        } else if (!compiled.isEmpty()) {
+            final List<WriteModel<Document>> models = new ArrayList<>(compiled.size());
+
+            for (final var update : compiled)
+                models.add(new UpdateOneModel<>(this.filter, update.update(), new UpdateOptions().arrayFilters(update.arrayFilters())));
+
+            final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "bulkWrite", this.filter, models.size());
+
+            collection.bulkWrite(models).subscribe(subscriber);
+
+            subscriber.await();
+
+            if (returnDocument) {
+                final ObservableSubscriber<Document> findSubscriber = new OperationSubscriber<>();
+
+                findSubscriber.recording(collection.getNamespace(), "findFirst", this.filter, 1);
+
+                collection.find(this.filter).first().subscribe(findSubscriber);
+
+                result = findSubscriber.first();
+            }
+        }
+
+        this.logger.info("Applied the array changes with {} update(s)", compiled.size());
+
+        final var document = Optional.ofNullable(result);
+
+        Trace.exit(this.logger, document);
+
+        return document;
+    }
+
+    /**
+     * The update documents and their array filters, one per round,
+     * in the order they are sent.
+     *
+     * @return  The updates
+     */
+    List<CompiledUpdate> compile() {
+        final List<CompiledUpdate> compiled = new ArrayList<>(this.rounds.size());
+
+        for (final var round : this.rounds) {
+            final var update = new Document();
+            final List<Bson> arrayFilters = new ArrayList<>();
+
+            for (final var change : round) {
+                final var operand = update.get(change.operator, Document.class) != null
+                        ? update.get(change.operator, Document.class)
+                        : new Document();
+
+                if (change.operator.equals(PUSH)) {
+                    final var each = new Document("$each", change.values);
+
+                    if (change.slice != null)
+                        each.append("$slice", change.slice);
+
+                    operand.append(change.path(), each);
+                } else {
+                    operand.append(change.path(), change.value);
+                }
+
+                update.put(change.operator, operand);
+
+                if (change.arrayFilter != null)
+                    arrayFilters.add(change.arrayFilter);
+            }
+
+            compiled.add(new CompiledUpdate(update, arrayFilters));
+        }
+
+        return compiled;
+    }
+
+    private ArrayUpdateBatch addValue(final Change change, final Object value) {
+        change.value = value;
+
+        this.add(change);
+
+        return this;
+    }
+
+    /*
+     * A change joins the latest update that touches the same array,
+     * merging with an identical change there or sitting beside it if
+     * they do not conflict; otherwise it starts the following update.
+     */
+    private void add(final Change change) {
+        var latest = -1;
+
+        for (int i = this.rounds.size() - 1; i >= 0 && latest < 0; i--) {
+            for (final var existing : this.rounds.get(i)) {
+                if (existing.conflictsWith(change) || existing.canMergeWith(change)) {
+                    latest = i;
+
+                    break;
+                }
+            }
+        }
+
+        if (latest < 0) {
+            if (this.rounds.isEmpty())
+                this.rounds.add(new ArrayList<>());
+
+            this.rounds.getLast().add(change);
+
+            return;
+        }
+
+        final var round = this.rounds.get(latest);
+
+        for (final var existing : round) {
+            if (existing.canMergeWith(change)) {
+                merge(existing, change);
+
+                return;
+            }
+        }
+
+        if (round.stream().noneMatch(existing -> existing.conflictsWith(change))) {
+            round.add(change);
+        } else {
+            if (latest == this.rounds.size() - 1)
+                this.rounds.add(new ArrayList<>());
+
+            this.rounds.get(latest + 1).add(change);
+        }
+    }
+
+    private static void merge(final Change existing, final Change change) {
+        switch (existing.operator) {
+            case PUSH -> existing.values.addAll(change.values);
+            case INC -> existing.value = combine((Number) existing.value, (Number) change.value, false);
+            case MUL -> existing.value = combine((Number) existing.value, (Number) change.value, true);
+            default -> existing.value = change.value;
+        }
+    }
+
+    /*
+     * Two ints stay an int unless the result overflows, as the server
+     * itself would do; otherwise integral values combine as longs.
+     */
+    private static Number combine(final Number a, final Number b, final boolean multiply) {
+        if (a instanceof Integer && b instanceof Integer) {
+            final var result = multiply ? Math.multiplyExact(a.longValue(), b.longValue()) : Math.addExact(a.longValue(), b.longValue());
+
+            if (result == (int) result)
+                return (int) result;
+
+            return result;
+        }
+
+        final var integral = (a instanceof Integer || a instanceof Long) && (b instanceof Integer || b instanceof Long);
+
+        if (integral)
+            return multiply ? Math.multiplyExact(a.longValue(), b.longValue()) : Math.addExact(a.longValue(), b.longValue());
+
+        return multiply ? a.doubleValue() * b.doubleValue() : a.doubleValue() + b.doubleValue();
+    }
+
+    private String nextIdentifier() {
+        return "e" + this.identifiers++;
+    }
+}
@@ -0,0 +1,263 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)AsyncDocumentPrinter.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+
+import java.util.Locale;
+import java.util.Properties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Logs documents as JSON from a dedicated writer thread so that the
+ * driver's callback threads only pay for putting a reference into a
+ * bounded ring buffer. Rendering happens on the writer thread through
+ * one JsonLineEncoder, as does the call into the appender.
+ *
+ * A caller can ask to be told once a document has been written, and
+ * PrintDocumentSubscriber uses that to request more documents from the
+ * driver only as the writer keeps up, so one stream never fills the
+ * buffer. When many streams do, the DROP policy, the default, discards
+ * the document, which never stalls the caller; the BLOCK policy waits
+ * for room, which loses nothing but holds up the driver's thread. The
+ * writer thread itself never waits. A dropped document counts as
+ * written; drops are counted and the first one is logged.
+ */
+final class AsyncDocumentPrinter implements AutoCloseable {
+    /**
+     * What to do with a document that arrives while the buffer is full.
+     */
+    enum Policy {
+        DROP,
+        BLOCK
+    }
+
+    private static volatile AsyncDocumentPrinter instance = new AsyncDocumentPrinter(8192, Policy.DROP);
+
+    /* A document to print and what to run once it is written, or a flush marker when latch is set */
+
+    private record Entry(XLogger logger, Document document, Runnable written, CountDownLatch latch) {
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final BlockingQueue<Entry> buffer;
+    private final Policy policy;
+    private final DocumentCodec codec = new DocumentCodec();
+    private final EncoderContext encoderContext = EncoderContext.builder().build();
+    private final JsonLineEncoder json = new JsonLineEncoder(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build());
+    private final LongAdder printed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final AtomicBoolean warned = new AtomicBoolean();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    AsyncDocumentPrinter(final int capacity, final Policy policy) {
+        super();
+
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.writer = Thread.ofPlatform()
+                .name("document-printer")
+                .daemon()
+                .unstarted(this::write);
+
+        this.writer.start();
+    }
+
+    /**
+     * Replace the process-wide printer with one configured from the
+     * mongodb.print properties. The previous printer is drained first.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        final var previous = instance;
+
+        instance = new AsyncDocumentPrinter(Integer.parseInt(properties.getProperty("mongodb.print.capacity", "8192")),
+                Policy.valueOf(properties.getProperty("mongodb.print.policy", "drop").toUpperCase(Locale.ROOT)));
+
+        previous.close();
+    }
+
+    static AsyncDocumentPrinter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queue a document to be logged at info on the given logger.
+     *
+     * @param   target      The logger to write to
+     * @param   document    The document
+     */
+    void print(final XLogger target, final Document document) {
+        this.print(target, document, null);
+    }
+
+    /**
+     * Queue a document to be logged at info on the given logger, and
+     * run a callback once it has been written or dropped. The callback
+     * runs on the writer thread, or on the caller's if the document is
+     * dropped, and must not block.
+     *
+     * @param   target      The logger to write to
+     * @param   document    The document
+     * @param   written     The callback, or null
+     */
+    void print(final XLogger target, final Document document, final Runnable written) {
+        final var entry = new Entry(target, document, written, null);
+
+        if (this.closed || !this.buffer.offer(entry)) {
+            if (this.closed || this.policy == Policy.DROP || Thread.currentThread() == this.writer) {
+                this.drop(written);
+            } else {
+                this.blocked.increment();
+
+                try {
+                    this.buffer.put(entry);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+
+                    this.drop(written);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until every document queued before this call has been
+     * written, so that output which follows stays in order.
+     *
+     * @param   timeout     The longest time to wait
+     * @param   unit        The unit of the timeout
+     * @return              True unless the timeout elapsed first
+     */
+    boolean flush(final long timeout, final TimeUnit unit) {
+        if (this.closed)
+            return true;
+
+        final var latch = new CountDownLatch(1);
+
+        try {
+            return this.buffer.offer(new Entry(null, null, null, latch), timeout, unit) && latch.await(timeout, unit);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+    /**
+     * Drain what is queued, stop the writer thread and log the counts.
+     */
+    @Override
+    public void close() {
+        this.logger.entry();
+
+        if (!this.closed) {
+            this.flush(10, TimeUnit.SECONDS);
+
+            this.closed = true;
+            this.writer.interrupt();
+
+            this.logMetrics();
+        }
+
+        this.logger.exit();
+    }
+
+    void logMetrics() {
+        if (this.logger.isInfoEnabled() && (this.dropped.sum() > 0 || this.blocked.sum() > 0))
+            this.logger.info("Document printer: {} printed, {} dropped, {} blocked ({} policy)",
+                    this.printed.sum(),
+                    this.dropped.sum(),
+                    this.blocked.sum(),
+                    this.policy);
+    }
+
+    private void write() {
+        while (!this.closed) {
+            try {
+                final var entry = this.buffer.take();
+
+                if (entry.latch() != null) {
+                    entry.latch().countDown();
+                } else {
+                    try {
+                        entry.logger().info(this.render(entry.document()));
+
+                        this.printed.increment();
+                    } finally {
+                        if (entry.written() != null)
+                            entry.written().run();
+                    }
+                }
+            } catch (final InterruptedException ie) {
+                break;
+            } catch (final RuntimeException re) {
+                this.logger.catching(re);
+            }
+        }
+    }
+
+    private String render(final Document document) {
+        return this.json.encode(this.codec, document, this.encoderContext).toString();
+    }
+
+    private void drop(final Runnable written) {
+        this.dropped.increment();
+
+        if (!this.warned.getAndSet(true))
+            this.logger.warn("Dropping documents: {}; the total is logged on close", this.closed ? "the printer is closed" : "the buffer is full");
+
+        if (written != null)
+            written.run();
+    }
+}
@@ -0,0 +1,407 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)BsonExporter.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Exports a collection as raw BSON: the bytes of each document exactly
+ * as the server sent them, one after the other. A BSON document starts
+ * with its own little-endian int32 length, so the file is a sequence of
+ * length-prefixed records in the same layout as a mongodump .bson file
+ * and can be read back without any framing of its own.
+ *
+ * The documents are decoded only as far as RawBsonDocument, which
+ * wraps the received bytes, and are written through a FileChannel with
+ * a large direct buffer or through a memory-mapped region. With more
+ * than one partition the collection is split into _id ranges that are
+ * exported in parallel, each to its own numbered file.
+ */
+final class BsonExporter {
+    enum Mode {
+        CHANNEL,
+        MAPPED
+    }
+
+    /**
+     * The outcome of an export.
+     */
+    record Result(List<Path> files, long documents, long bytes, long nanos) {
+        double megabytesPerSecond() {
+            return this.nanos == 0 ? 0 : (this.bytes / 1_048_576.0) / (this.nanos / 1e9);
+        }
+    }
+
+    /*
+     * Where the documents of one partition go
+     */
+    private interface Sink extends AutoCloseable {
+        void write(ByteBuffer document) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final Mode mode;
+    private final int partitions;
+    private final int batchSize;
+    private final int bufferBytes;
+    private final long timeoutSeconds;
+
+    BsonExporter(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.mode = Mode.valueOf(properties.getProperty("mongodb.export.mode", "channel").toUpperCase(Locale.ROOT));
+        this.partitions = Integer.parseInt(properties.getProperty("mongodb.export.partitions", "1"));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.export.batchSize", "1000"));
+        this.bufferBytes = Integer.parseInt(properties.getProperty("mongodb.export.bufferBytes", "4194304"));
+        this.timeoutSeconds = Long.parseLong(properties.getProperty("mongodb.export.timeoutSeconds", "600"));
+    }
+
+    /**
+     * Export a collection. With one partition the documents go to the
+     * given file; with more, to files named like it with the partition
+     * number before the extension.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @param   file            The file to write
+     * @return                  The files written, the documents and bytes, and the elapsed time
+     */
+    Result export(final String dbName, final String collectionName, final Path file) {
+        this.logger.entry(dbName, collectionName, file);
+
+        final var collection = this.mongoClient.getDatabase(dbName).getCollection(collectionName, RawBsonDocument.class);
+        final var ranges = this.partitions > 1 ? this.getRanges(collection) : List.of(Filters.empty());
+        final var start = System.nanoTime();
+
+        final List<Result> results = new ArrayList<>(ranges.size());
+
+        try {
+            if (ranges.size() == 1) {
+                results.add(this.exportRange(collection, ranges.getFirst(), file));
+            } else {
+                try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    final List<Future<Result>> futures = new ArrayList<>(ranges.size());
+
+                    for (int i = 0; i < ranges.size(); i++) {
+                        final var range = ranges.get(i);
+                        final var partitionFile = partitionFile(file, i);
+
+                        futures.add(executor.submit(() -> this.exportRange(collection, range, partitionFile)));
+                    }
+
+                    for (final var future : futures)
+                        results.add(future.get());
+                }
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new RuntimeException("Interrupted exporting " + collectionName, ie);
+        } catch (final ExecutionException ee) {
+            throw new RuntimeException("Exception exporting " + collectionName, ee.getCause());
+        }
+
+        final var result = new Result(results.stream().flatMap(r -> r.files().stream()).toList(),
+                results.stream().mapToLong(Result::documents).sum(),
+                results.stream().mapToLong(Result::bytes).sum(),
+                System.nanoTime() - start);
+
+        this.logger.info("Exported {} document(s) ({} bytes) from {}.{} to {} file(s) in {} ms: {} MB/s",
+                result.documents(),
+                result.bytes(),
+                dbName,
+                collectionName,
+                result.files().size(),
+                TimeUnit.NANOSECONDS.toMillis(result.nanos()),
+                String.format("%.1f", result.megabytesPerSecond()));
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private Result exportRange(final MongoCollection<RawBsonDocument> collection, final Bson range, final Path file) {
+        final var start = System.nanoTime();
+        final long[] totals = new long[2];
+
+        try (final var sink = this.openSink(file)) {
+            final var holder = new AtomicReference<StreamingSubscriber<RawBsonDocument>>();
+
+            final var subscriber = new StreamingSubscriber<RawBsonDocument>(this.batchSize, document -> {
+                if (holder.get().getError() != null)
+                    return;
+
+                final var bytes = document.getByteBuffer().asNIO();
+
+                totals[0]++;
+                totals[1] += bytes.remaining();
+
+                try {
+                    sink.write(bytes);
+                } catch (final IOException ioe) {
+                    // Subscribers must not throw; stop the cursor and fail the await instead
+
+                    holder.get().getSubscription().cancel();
+                    holder.get().onError(new UncheckedIOException(ioe));
+                }
+            });
+
+            holder.set(subscriber);
+
+            subscriber.recording(collection.getNamespace(), "find", range, this.batchSize);
+
+            collection.find(range)
+                    .batchSize(this.batchSize)
+                    .subscribe(subscriber);
+
+            subscriber.await(this.timeoutSeconds, TimeUnit.SECONDS);
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return new Result(List.of(file), totals[0], totals[1], System.nanoTime() - start);
+    }
+
+    /*
+     * Split points taken from a sorted sample of _id values; every
+     * partition is [point i, point i + 1) among the _id values of the
+     * sampled type. Range filters only match values of the same BSON
+     * type, so a last partition takes every _id of another type that
+     * the sample missed, and a collection whose sampled _id values are
+     * not all of one type is exported as a single partition.
+     */
+    private List<Bson> getRanges(final MongoCollection<RawBsonDocument> collection) {
+        final var samplesPerPartition = 100;
+
+        final ObservableSubscriber<RawBsonDocument> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "aggregate", null, 0);
+
+        collection.aggregate(List.of(
+                        Aggregates.sample(this.partitions * samplesPerPartition),
+                        Aggregates.project(Projections.include("_id")),
+                        Aggregates.sort(Sorts.ascending("_id"))))
+                .subscribe(subscriber);
+
+        final List<BsonValue> ids = subscriber.get().stream().map(document -> document.get("_id")).toList();
+
+        if (ids.isEmpty() || ids.stream().map(BsonValue::getBsonType).distinct().count() > 1) {
+            this.logger.warn("Exporting as one partition: the _id values are missing or of mixed types");
+
+            return List.of(Filters.empty());
+        }
+
+        final List<BsonValue> points = new ArrayList<>();
+
+        for (int i = 1; i < this.partitions; i++) {
+            final var point = ids.get(i * ids.size() / this.partitions);
+
+            if (points.isEmpty() || !points.getLast().equals(point))
+                points.add(point);
+        }
+
+        final var type = Filters.type("_id", ids.getFirst().getBsonType());
+        final List<Bson> ranges = new ArrayList<>(points.size() + 2);
+
+        for (int i = 0; i <= points.size(); i++) {
+            if (i == 0)
+                ranges.add(Filters.and(type, Filters.lt("_id", points.getFirst())));
+            else if (i == points.size())
+                ranges.add(Filters.and(type, Filters.gte("_id", points.getLast())));
+            else
+                ranges.add(Filters.and(type, Filters.gte("_id", points.get(i - 1)), Filters.lt("_id", points.get(i))));
+        }
+
+        ranges.add(Filters.not(type));
+
+        return ranges;
+    }
+
+    private Sink openSink(final Path file) throws IOException {
+        final var directory = file.toAbsolutePath().getParent();
+
+        if (directory != null)
+            Files.createDirectories(directory);
+
+        final var channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        return this.mode == Mode.MAPPED ? new MappedSink(channel, this.bufferBytes) : new ChannelSink(channel, this.bufferBytes);
+    }
+
+    static Path partitionFile(final Path file, final int partition) {
+        final var name = file.getFileName().toString();
+        final var dot = name.lastIndexOf('.');
+        final var partitionName = dot < 0
+                ? name + "." + partition
+                : name.substring(0, dot) + "." + partition + name.substring(dot);
+
+        return file.resolveSibling(partitionName);
+    }
+
+    /*
+     * Gathers documents in a direct buffer and writes it out whole
+     */
+    private static final class ChannelSink implements Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private ChannelSink(final FileChannel channel, final int bufferBytes) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        @Override
+        public void write(final ByteBuffer document) throws IOException {
+            if (document.remaining() > this.buffer.remaining())
+                this.drain();
+
+            if (document.remaining() > this.buffer.capacity()) {
+                while (document.hasRemaining())
+                    this.channel.write(document);
+            } else {
+                this.buffer.put(document);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.drain();
+            } finally {
+                this.channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            this.buffer.flip();
+
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+
+            this.buffer.clear();
+        }
+    }
+
+    /*
+     * Copies documents into successive memory-mapped regions of the
+     * file and trims the unused end of the last region on close
+     */
+    private static final class MappedSink implements Sink {
+        private final FileChannel channel;
+        private final int regionBytes;
+        private MappedByteBuffer region;
+        private long regionStart;
+
+        private MappedSink(final FileChannel channel, final int regionBytes) {
+            this.channel = channel;
+            this.regionBytes = regionBytes;
+        }
+
+        @Override
+        public void write(final ByteBuffer document) throws IOException {
+            if (this.region == null || document.remaining() > this.region.remaining()) {
+                final var position = this.position();
+
+                this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(this.regionBytes, document.remaining()));
+                this.regionStart = position;
+            }
+
+            this.region.put(document);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.region != null) {
+                    this.region.force();
+
+                    this.channel.truncate(this.position());
+                }
+            } finally {
+                this.channel.close();
+            }
+        }
+
+        private long position() {
+            return this.region == null ? 0 : this.regionStart + this.region.position();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)BsonImporter.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.RawBsonDocument;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Loads a raw BSON dump, such as one written by BsonExporter or
+ * mongodump, into a collection. The file is memory-mapped and walked
+ * by the int32 length that starts every document; the documents are
+ * never decoded. Each batch is copied out of the mapping with one
+ * bulk get and its documents are wrapped in place as RawBsonDocuments,
+ * whose bytes the driver writes to the wire unchanged.
+ *
+ * Batches are written with insertMany or, to make a restore safe to
+ * repeat, with a bulkWrite of upserting replaces by _id. Up to
+ * maxInFlight batches are outstanding at once, so reading the file
+ * overlaps with the server's work.
+ */
+final class BsonImporter {
+    enum Mode {
+        INSERT,
+        UPSERT
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    record Result(long documents, long bytes, long batches, long nanos) {
+        double megabytesPerSecond() {
+            return this.nanos == 0 ? 0 : (this.bytes / 1_048_576.0) / (this.nanos / 1e9);
+        }
+
+        double documentsPerSecond() {
+            return this.nanos == 0 ? 0 : this.documents / (this.nanos / 1e9);
+        }
+    }
+
+    /* The smallest BSON document: a length and a terminating zero */
+    private static final int MIN_DOCUMENT_BYTES = 5;
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final Mode mode;
+    private final boolean ordered;
+    private final int batchSize;
+    private final int batchBytes;
+    private final int maxInFlight;
+    private final long windowBytes;
+    private final long timeoutSeconds;
+
+    BsonImporter(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.mode = Mode.valueOf(properties.getProperty("mongodb.import.mode", "insert").toUpperCase(Locale.ROOT));
+        this.ordered = Boolean.parseBoolean(properties.getProperty("mongodb.import.ordered", "false"));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.import.batchSize", "1000"));
+        this.batchBytes = Integer.parseInt(properties.getProperty("mongodb.import.batchBytes", "16777216"));
+        this.maxInFlight = Integer.parseInt(properties.getProperty("mongodb.import.maxInFlight", "4"));
+        this.windowBytes = Long.parseLong(properties.getProperty("mongodb.import.windowBytes", "268435456"));
+        this.timeoutSeconds = Long.parseLong(properties.getProperty("mongodb.import.timeoutSeconds", "600"));
+
+        // A batch that can hold nothing would never advance through the file
+
+        if (this.batchSize <= 0)
+            throw new IllegalArgumentException("The import batch size must be positive: " + this.batchSize);
+
+        if (this.batchBytes <= 0)
+            throw new IllegalArgumentException("The import batch bytes must be positive: " + this.batchBytes);
+
+        if (this.maxInFlight <= 0)
+            throw new IllegalArgumentException("The imports in flight must be positive: " + this.maxInFlight);
+    }
+
+    /**
+     * Import a dump file into a collection.
+     *
+     * @param   file            The dump file
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @return                  The documents, bytes and batches, and the elapsed time
+     */
+    Result importFile(final Path file, final String dbName, final String collectionName) {
+        this.logger.entry(file, dbName, collectionName);
+
+        final var collection = this.mongoClient.getDatabase(dbName).getCollection(collectionName, RawBsonDocument.class);
+        final var permits = new Semaphore(this.maxInFlight);
+        final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+        final var start = System.nanoTime();
+
+        long documents = 0;
+        long batches = 0;
+        long size;
+
+        RuntimeException failure = null;
+
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            long position = 0;
+
+            while (position < size && errors.isEmpty()) {
+                // Gather the next batch: whole documents within the current window
+
+                if (window == null || position - windowStart + Integer.BYTES > window.limit()) {
+                    windowStart = position;
+                    window = this.map(channel, windowStart, size, 0);
+                }
+
+                final var batchStart = (int) (position - windowStart);
+                final List<int[]> spans = new ArrayList<>();
+
+                var offset = batchStart;
+
+                while (spans.size() < this.batchSize && offset - batchStart < this.batchBytes && offset + Integer.BYTES <= window.limit()) {
+                    final var length = window.getInt(offset);
+
+                    if (length < MIN_DOCUMENT_BYTES || windowStart + offset + length > size)
+                        throw new IllegalArgumentException("Corrupt BSON document at offset " + (windowStart + offset) + " of " + file);
+
+                    if (offset + length > window.limit())
+                        break;
+
+                    spans.add(new int[] {offset - batchStart, length});
+
+                    offset += length;
+                }
+
+                if (spans.isEmpty()) {
+                    // Too few bytes are left in the file to hold even a length
+
+                    if (position + Integer.BYTES > size)
+                        throw new IllegalArgumentException("Corrupt BSON document at offset " + position + " of " + file);
+
+                    // The next document runs past the window; map a new one that starts with it
+
+                    final var length = window.getInt(batchStart);
+
+                    windowStart = position;
+                    window = this.map(channel, windowStart, size, length);
+
+                    continue;
+                }
+
+                final var bytes = new byte[offset - batchStart];
+
+                window.get(batchStart, bytes);
+
+                final List<RawBsonDocument> batch = new ArrayList<>(spans.size());
+
+                for (final var span : spans)
+                    batch.add(new RawBsonDocument(bytes, span[0], span[1]));
+
+                this.acquire(permits, 1);
+                this.write(collection, batch, permits, errors);
+
+                documents += batch.size();
+                batches++;
+                position = windowStart + offset;
+            }
+        } catch (final IOException ioe) {
+            failure = new UncheckedIOException(ioe);
+
+            throw failure;
+        } catch (final RuntimeException re) {
+            failure = re;
+
+            throw re;
+        } finally {
+            // Wait for the batches still in flight, without hiding why the loop stopped
+
+            try {
+                this.acquire(permits, this.maxInFlight);
+            } catch (final RuntimeException re) {
+                if (failure == null)
+                    throw re;
+
+                failure.addSuppressed(re);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            this.logger.error("{} batch(es) of {} failed", errors.size(), file);
+
+            throw errors.peek();
+        }
+
+        final var result = new Result(documents, size, batches, System.nanoTime() - start);
+
+        this.logger.info("Imported {} document(s) ({} bytes) in {} batch(es) from {} to {}.{} in {} ms: {} MB/s, {} documents/s",
+                result.documents(),
+                result.bytes(),
+                result.batches(),
+                file,
+                dbName,
+                collectionName,
+                TimeUnit.NANOSECONDS.toMillis(result.nanos()),
+                String.format("%.1f", result.megabytesPerSecond()),
+                String.format("%.0f", result.documentsPerSecond()));
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private MappedByteBuffer map(final FileChannel channel,
+                                 final long position,
+                                 final long size,
+                                 final int minimumBytes) throws IOException {
+        final var length = Math.min(Math.max(Math.min(this.windowBytes, Integer.MAX_VALUE), minimumBytes), size - position);
+        final var window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+        window.order(ByteOrder.LITTLE_ENDIAN);
+
+        return window;
+    }
+
+    private void write(final MongoCollection<RawBsonDocument> collection,
+                       final List<RawBsonDocument> batch,
+                       final Semaphore permits,
+                       final Queue<RuntimeException> errors) {
+        final ObservableSubscriber<Object> subscriber = new ObservableSubscriber<>(collection.getNamespace()) {
+            @Override
+            public void onComplete() {
+                super.onComplete();
+
+                if (this.getError() != null)
+                    errors.add(this.getError());
+
+                permits.release();
+            }
+        };
+
+        subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
+
+        if (this.mode == Mode.UPSERT) {
+            final List<WriteModel<RawBsonDocument>> models = new ArrayList<>(batch.size());
+
+            for (final var document : batch)
+                models.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, new ReplaceOptions().upsert(true)));
+
+            subscriber.recording(collection.getNamespace(), "bulkWrite", null, models.size());
+
+            collection.bulkWrite(models, new BulkWriteOptions().ordered(this.ordered)).subscribe(subscriber.expiring());
+        } else {
+            subscriber.recording(collection.getNamespace(), "insertMany", null, batch.size());
+
+            collection.insertMany(batch, new InsertManyOptions().ordered(this.ordered)).subscribe(subscriber.expiring());
+        }
+    }
+
+    private void acquire(final Semaphore permits, final int count) {
+        try {
+            if (!permits.tryAcquire(count, this.timeoutSeconds, TimeUnit.SECONDS))
+                throw new RuntimeException("Timed out waiting for batches to be written");
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new RuntimeException("Interrupted waiting for batches to be written", ie);
+        }
+    }
+}
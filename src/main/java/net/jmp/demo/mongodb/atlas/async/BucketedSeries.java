@@ -0,0 +1,262 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)BucketedSeries.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Appends values to a series without letting any one document grow
+ * without bound. The values go into bucket documents of at most
+ * maxElements entries that each cover one time span:
+ *
+ * { series, start, end, count, values: [ { t, v }, ... ] }
+ *
+ * An append is a single upsert that matches the open bucket of the
+ * current span with count below the limit; when the bucket is full
+ * or the span has moved on, nothing matches and the upsert starts a
+ * new bucket. Two appends that race to open a bucket may both create
+ * one; the reader does not mind, it orders buckets by start and _id.
+ */
+final class BucketedSeries {
+    static final String SERIES = "series";
+    static final String START = "start";
+    static final String END = "end";
+    static final String COUNT = "count";
+    static final String VALUES = "values";
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final int maxElements;
+    private final long spanMillis;
+    private volatile boolean indexed;
+
+    BucketedSeries(final MongoClient mongoClient,
+                   final String dbName,
+                   final String collectionName,
+                   final int maxElements,
+                   final Duration span) {
+        super();
+
+        if (maxElements < 1)
+            throw new IllegalArgumentException("maxElements must be at least 1");
+
+        if (span.toMillis() < 1)
+            throw new IllegalArgumentException("span must be at least one millisecond");
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+        this.maxElements = maxElements;
+        this.spanMillis = span.toMillis();
+    }
+
+    void append(final String series, final Object value) {
+        this.append(series, value, Instant.now());
+    }
+
+    /**
+     * Append a value at a point in time to the series.
+     *
+     * @param   series  The series key
+     * @param   value   The value
+     * @param   time    The time of the value
+     */
+    void append(final String series, final Object value, final Instant time) {
+        Trace.entry(this.logger, series, value, time);
+
+        this.ensureIndex();
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var timestamp = Date.from(time);
+        final var start = new Date(Math.floorDiv(time.toEpochMilli(), this.spanMillis) * this.spanMillis);
+
+        final var filter = Filters.and(
+                Filters.eq(SERIES, series),
+                Filters.eq(START, start),
+                Filters.lt(COUNT, this.maxElements)
+        );
+
+        final var update = Updates.combine(
+                Updates.push(VALUES, new Document("t", timestamp).append("v", value)),
+                Updates.inc(COUNT, 1),
+                Updates.max(END, timestamp)
+        );
+
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
+
+        collection.updateOne(filter, update, new UpdateOptions().upsert(true)).subscribe(subscriber);
+
+        final var result = subscriber.first();
+
+        if (result != null && result.getUpsertedId() != null)
+            this.logger.info("Opened bucket {} for series {}", result.getUpsertedId(), series);
+
+        Trace.exit(this.logger);
+    }
+
+    /**
+     * Reassemble a series from its buckets in time order.
+     *
+     * @param   series  The series key
+     * @return          The { t, v } entries of the series
+     */
+    List<Document> read(final String series) {
+        return this.read(series, Instant.EPOCH, Instant.ofEpochMilli(Long.MAX_VALUE));
+    }
+
+    /**
+     * Reassemble the part of a series with times in [from, to).
+     * Only the buckets whose spans overlap the range are read.
+     *
+     * @param   series  The series key
+     * @param   from    The inclusive lower bound
+     * @param   to      The exclusive upper bound
+     * @return          The { t, v } entries in time order
+     */
+    List<Document> read(final String series, final Instant from, final Instant to) {
+        Trace.entry(this.logger, series, from, to);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var lower = Date.from(from);
+        final var upper = Date.from(to);
+
+        final var filter = Filters.and(
+                Filters.eq(SERIES, series),
+                Filters.lt(START, upper),
+                Filters.gte(END, lower)
+        );
+
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+
+        collection.find(filter)
+                .sort(Sorts.ascending(START, "_id"))
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        final List<Document> entries = new ArrayList<>();
+
+        for (final var bucket : subscriber.getReceived()) {
+            for (final var entry : bucket.getList(VALUES, Document.class, List.of())) {
+                final var t = entry.getDate("t");
+
+                if (!t.before(lower) && t.before(upper))
+                    entries.add(entry);
+            }
+        }
+
+        // Racing appends may leave sibling buckets in one span
+
+        entries.sort((a, b) -> a.getDate("t").compareTo(b.getDate("t")));
+
+        this.logger.info("Read {} value(s) of series {} from {} bucket(s)", entries.size(), series, subscriber.getReceived().size());
+        Trace.exit(this.logger, entries);
+
+        return entries;
+    }
+
+    /**
+     * Remove every bucket of a series.
+     *
+     * @param   series  The series key
+     */
+    void delete(final String series) {
+        Trace.entry(this.logger, series);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        final var filter = Filters.eq(SERIES, series);
+        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "deleteMany", filter, 0);
+
+        collection.deleteMany(filter).subscribe(subscriber);
+
+        final var result = subscriber.first();
+
+        if (result != null)
+            this.logger.info("{} bucket(s) of series {} were deleted", result.getDeletedCount(), series);
+
+        Trace.exit(this.logger);
+    }
+
+    private void ensureIndex() {
+        if (this.indexed)
+            return;
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        final ObservableSubscriber<String> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "createIndex", null, 0);
+
+        collection.createIndex(Indexes.ascending(SERIES, START, COUNT), new IndexOptions().name("series_start_count"))
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        this.indexed = true;
+    }
+}
@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Bulk.java 0.10.0  10/19/2026
  * (#)Bulk.java 0.7.0   01/09/2024
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.7.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -36,7 +37,14 @@ import com.mongodb.bulk.BulkWriteResult;
 
 import com.mongodb.client.model.*;
 
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.ClientSession;
 import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.time.Duration;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -53,6 +61,7 @@ final class Bulk {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final int maxOperationsPerTransaction;
 
     Bulk(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -61,6 +70,7 @@ final class Bulk {
 
         this.dbName = properties.getProperty("mongodb.bulk.db", "training");
         this.collectionName = properties.getProperty("mongodb.bulk.collection", "people");
+        this.maxOperationsPerTransaction = Integer.parseInt(properties.getProperty("mongodb.bulk.transaction.maxOperations", "100"));
     }
 
     void run() {
@@ -83,6 +93,13 @@ final class Bulk {
 
         this.update();
 
+        Helpers.printAllDocuments(this.mongoClient,
+                this.dbName,
+                this.collectionName,
+                this.logger);
+
+        this.transactional();
+
         Helpers.printAllDocuments(this.mongoClient,
                 this.dbName,
                 this.collectionName,
@@ -116,7 +133,10 @@ final class Bulk {
 
         final var options = new BulkWriteOptions().ordered(true);
 
-        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "bulkWrite", null, bulkDocuments.size());
+        subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
 
         collection.bulkWrite(bulkDocuments, options).subscribe(subscriber);
 
@@ -152,7 +172,10 @@ final class Bulk {
 
         final List<WriteModel<Document>> bulkDocuments = List.of(marinaDoc);
 
-        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "bulkWrite", filter, bulkDocuments.size());
+        subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
 
         collection.bulkWrite(bulkDocuments).subscribe(subscriber);
 
@@ -191,7 +214,10 @@ final class Bulk {
 
         final List<UpdateOneModel<Document>> bulkDocuments = List.of(juneDoc);
 
-        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "bulkWrite", filter, bulkDocuments.size());
+        subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
 
         collection.bulkWrite(bulkDocuments).subscribe(subscriber);
 
@@ -218,6 +244,57 @@ final class Bulk {
         this.logger.exit();
     }
 
+    private void transactional() {
+        this.logger.entry();
+
+        // The two inserts and the update commit together or not at all
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        final var executor = new TransactionExecutor<>(TransactionExecutor.forMongoClient(this.mongoClient),
+                this.maxOperationsPerTransaction,
+                Duration.ofMinutes(2));
+
+        executor.submit(session -> this.insertInSession(collection, session, new Document("name", "Maria Lopez").append("age", 42)));
+        executor.submit(session -> this.insertInSession(collection, session, new Document("name", "Omar Haddad").append("age", 27)));
+        executor.submit(session -> {
+            final var filter = Filters.eq("name", "Kevin Moss");
+            final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(AdmissionControl.Budget.WRITE);
+
+            subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
+
+            collection.updateOne(session, filter, Updates.inc("age", 1)).subscribe(subscriber);
+
+            subscriber.await();
+        });
+
+        executor.flush();
+
+        // The writes are visible to lookups only once the transaction commits
+
+        NearCache.getInstance().invalidate(collection.getNamespace());
+        executor.logMetrics();
+
+        this.logger.exit();
+    }
+
+    private void insertInSession(final MongoCollection<Document> collection,
+                                 final ClientSession session,
+                                 final Document document) {
+        this.logger.entry(collection, session, document);
+
+        final ObservableSubscriber<InsertOneResult> subscriber = new OperationSubscriber<>(AdmissionControl.Budget.WRITE);
+
+        subscriber.recording(collection.getNamespace(), "insertOne", null, 1);
+
+        collection.insertOne(session, document).subscribe(subscriber);
+
+        subscriber.await();
+
+        this.logger.exit();
+    }
+
     private void delete() {
         this.logger.entry();
 
@@ -231,9 +308,12 @@ final class Bulk {
 
         final var options = new BulkWriteOptions().ordered(false);
 
-        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
 
         try {
+            subscriber.recording(collection.getNamespace(), "bulkWrite", filter, bulkDocuments.size());
+            subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
+
             collection.bulkWrite(bulkDocuments, options).subscribe(subscriber);
 
             subscriber.await();
@@ -0,0 +1,554 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)CacheInvalidationBus.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Keeps the near cache correct when other processes write to the
+ * database by invalidating the namespace of every change that a
+ * change stream reports. Events that say nothing about which
+ * documents changed (invalidate, dropDatabase, unknown types) and
+ * any gap in the stream flush the whole cache instead.
+ *
+ * The resume token of the last event handled is written to a file
+ * once per checkpoint interval, when it has changed, and on close, so
+ * that after a restart the stream carries on where it left off. The
+ * file is written by the bus's own scheduler, never by the thread
+ * delivering events. A token the
+ * server no longer holds history for is discarded after a flush.
+ *
+ * A stream with no token to resume from is opened at a cluster time
+ * read before the cache is flushed, so a change made between the
+ * flush and the stream opening is still reported, rather than leaving
+ * a document read into the cache in that window stale until it
+ * expires.
+ */
+final class CacheInvalidationBus implements AutoCloseable {
+    /* The server error code when a resume token has aged out of the oplog */
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    /**
+     * Opens a change stream starting after a resume token, or at an
+     * operation time when the token is null, or at the current time
+     * when both are.
+     */
+    interface ChangeSource {
+        Publisher<ChangeStreamDocument<Document>> watch(BsonDocument resumeToken, BsonTimestamp startAtOperationTime);
+
+        /**
+         * The cluster time now, to open a stream at later without
+         * missing what happens in between.
+         *
+         * @return  The operation time, or null if it is not known
+         */
+        default BsonTimestamp operationTime() {
+            return null;
+        }
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final ChangeSource source;
+    private final NearCache cache;
+    private final Path tokenFile;
+    private final long checkpointIntervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    private final LongAdder events = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private volatile BsonDocument resumeToken;
+    private volatile Subscription subscription;
+    private volatile boolean closed;
+    private BsonDocument writtenToken;
+
+    CacheInvalidationBus(final ChangeSource source,
+                         final NearCache cache,
+                         final Path tokenFile,
+                         final long checkpointIntervalMillis) {
+        super();
+
+        this.source = source;
+        this.cache = cache;
+        this.tokenFile = tokenFile;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    /**
+     * A change source for every collection of one database.
+     *
+     * @param   mongoClient The client
+     * @param   dbName      The name of the database
+     * @return              The change source
+     */
+    static ChangeSource forDatabase(final MongoClient mongoClient, final String dbName) {
+        return new ChangeSource() {
+            @Override
+            public Publisher<ChangeStreamDocument<Document>> watch(final BsonDocument resumeToken,
+                                                                   final BsonTimestamp startAtOperationTime) {
+                final var publisher = mongoClient.getDatabase(dbName).watch();
+
+                if (resumeToken != null)
+                    return publisher.startAfter(resumeToken);
+
+                return startAtOperationTime == null ? publisher : publisher.startAtOperationTime(startAtOperationTime);
+            }
+
+            /* Every command reply from a replica set carries the operation time */
+
+            @Override
+            public BsonTimestamp operationTime() {
+                final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+                subscriber.recording(new MongoNamespace(dbName, "$cmd"), "ping", null, 0);
+
+                mongoClient.getDatabase(dbName).runCommand(new Document("ping", 1)).subscribe(subscriber);
+
+                final var reply = subscriber.first();
+
+                return reply != null ? reply.get("operationTime", BsonTimestamp.class) : null;
+            }
+        };
+    }
+
+    /**
+     * Open the change stream from the persisted resume token, if any.
+     */
+    void start() {
+        this.logger.entry();
+
+        this.resumeToken = this.readToken();
+        this.writtenToken = this.resumeToken;
+
+        if (this.resumeToken != null)
+            this.logger.info("Resuming the change stream from {}", this.resumeToken.toJson());
+
+        this.open(false);
+
+        this.scheduler.scheduleWithFixedDelay(this::checkpoint,
+                this.checkpointIntervalMillis,
+                this.checkpointIntervalMillis,
+                TimeUnit.MILLISECONDS);
+
+        this.logger.exit();
+    }
+
+    @Override
+    public void close() {
+        this.logger.entry();
+
+        this.closed = true;
+
+        final var current = this.subscription;
+
+        if (current != null)
+            current.cancel();
+
+        this.scheduler.shutdownNow();
+        this.writeToken();
+        this.logMetrics();
+
+        this.logger.exit();
+    }
+
+    long getEvents() {
+        return this.events.sum();
+    }
+
+    long getInvalidations() {
+        return this.invalidations.sum();
+    }
+
+    long getFlushes() {
+        return this.flushes.sum();
+    }
+
+    long getRestarts() {
+        return this.restarts.sum();
+    }
+
+    void logMetrics() {
+        this.logger.info("Cache invalidation: {} event(s), {} invalidation(s), {} flush(es), {} restart(s)",
+                this.events.sum(),
+                this.invalidations.sum(),
+                this.flushes.sum(),
+                this.restarts.sum());
+    }
+
+    /*
+     * Open the stream, flushing the cache first if asked. Without a
+     * token changes made before the stream opens cannot be seen, so
+     * the cache is always flushed and the stream starts at a cluster
+     * time read before the flush.
+     */
+    private void open(final boolean flush) {
+        if (this.closed)
+            return;
+
+        final var startAtOperationTime = this.resumeToken == null ? this.source.operationTime() : null;
+
+        if (flush || this.resumeToken == null)
+            this.flush();
+
+        this.source.watch(this.resumeToken, startAtOperationTime).subscribe(new InvalidationSubscriber());
+    }
+
+    private void handle(final ChangeStreamDocument<Document> event) {
+        this.events.increment();
+
+        final var namespace = event.getNamespace();
+
+        switch (event.getOperationType()) {
+            case INSERT, UPDATE, REPLACE, DELETE, DROP, RENAME -> {
+                if (namespace != null) {
+                    this.cache.invalidate(namespace.getDatabaseName(), namespace.getCollectionName());
+
+                    this.invalidations.increment();
+                } else {
+                    this.flush();
+                }
+
+                if (event.getOperationType() == OperationType.RENAME && event.getDestinationNamespace() != null)
+                    this.cache.invalidate(event.getDestinationNamespace().getDatabaseName(), event.getDestinationNamespace().getCollectionName());
+            }
+            default -> this.flush();
+        }
+
+        this.resumeToken = event.getResumeToken();
+    }
+
+    private void flush() {
+        this.cache.clear();
+        this.flushes.increment();
+    }
+
+    /*
+     * The stream ended: after an invalidate event it closes normally
+     * and is reopened after that event; after an error changes may
+     * have been missed, so the cache is flushed as the stream reopens.
+     */
+    private void restart(final Throwable error) {
+        if (this.closed)
+            return;
+
+        if (error != null) {
+            this.logger.warn("The change stream failed: {}", error.getMessage());
+
+            // The next checkpoint deletes the token file
+
+            if (error instanceof MongoCommandException mce && mce.getErrorCode() == CHANGE_STREAM_HISTORY_LOST)
+                this.resumeToken = null;
+        }
+
+        this.restarts.increment();
+
+        this.scheduler.schedule(() -> this.open(error != null), error != null ? 1 : 0, TimeUnit.SECONDS);
+    }
+
+    private BsonDocument readToken() {
+        try {
+            return Files.exists(this.tokenFile) ? BsonDocument.parse(Files.readString(this.tokenFile)) : null;
+        } catch (final IOException | RuntimeException e) {
+            this.logger.warn("Ignoring the unreadable resume token in {}: {}", this.tokenFile, e.getMessage());
+
+            return null;
+        }
+    }
+
+    private synchronized void checkpoint() {
+        if (this.resumeToken != this.writtenToken)
+            this.writeToken();
+    }
+
+    private synchronized void writeToken() {
+        final var token = this.resumeToken;
+
+        try {
+            if (token == null) {
+                Files.deleteIfExists(this.tokenFile);
+            } else {
+                // Replace the file atomically so a crash never leaves half a token
+
+                final var temporary = this.tokenFile.resolveSibling(this.tokenFile.getFileName() + ".tmp");
+
+                Files.writeString(temporary, token.toJson());
+                Files.move(temporary, this.tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            this.writtenToken = token;
+        } catch (final IOException ioe) {
+            this.logger.catching(ioe);
+        }
+    }
+
+    private final class InvalidationSubscriber implements Subscriber<ChangeStreamDocument<Document>> {
+        private Subscription streamSubscription;
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            this.streamSubscription = s;
+
+            subscription = s;
+
+            if (closed)
+                s.cancel();
+            else
+                s.request(1);
+        }
+
+        @Override
+        public void onNext(final ChangeStreamDocument<Document> event) {
+            try {
+                handle(event);
+            } catch (final RuntimeException re) {
+                logger.catching(re);
+
+                flush();
+            }
+
+            this.streamSubscription.request(1);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            restart(t);
+        }
+
+        @Override
+        public void onComplete() {
+            restart(null);
+        }
+    }
+
+    /**
+     * An in-process stand-in for a change stream that emits the events
+     * it is given. It keeps every event so that a stream opened after
+     * a resume token replays the events that followed it.
+     */
+    static final class LocalChangeStream implements ChangeSource {
+        private static final Codec<ChangeStreamDocument<Document>> CODEC =
+                ChangeStreamDocument.createCodec(Document.class, MongoClientSettings.getDefaultCodecRegistry());
+
+        private final List<ChangeStreamDocument<Document>> history = new ArrayList<>();
+        private final List<LocalSubscription> subscriptions = new ArrayList<>();
+
+        /**
+         * Emit a change to a namespace.
+         *
+         * @param   operationType   The operation type, such as "update" or "invalidate"
+         * @param   dbName          The name of the database
+         * @param   collectionName  The name of the collection
+         */
+        void emit(final String operationType, final String dbName, final String collectionName) {
+            this.emit(operationType, dbName, collectionName, null);
+        }
+
+        /**
+         * Emit a change to one document of a namespace.
+         *
+         * @param   operationType   The operation type, such as "update" or "invalidate"
+         * @param   dbName          The name of the database
+         * @param   collectionName  The name of the collection
+         * @param   documentKey     The document key, or null
+         */
+        void emit(final String operationType, final String dbName, final String collectionName, final BsonDocument documentKey) {
+            final List<LocalSubscription> current;
+
+            synchronized (this) {
+                // Built as the server sends it, with the resume token as the _id
+
+                final var change = new BsonDocument("_id", new BsonDocument("_data", new BsonString(Integer.toString(this.history.size()))))
+                        .append("operationType", new BsonString(operationType))
+                        .append("ns", new BsonDocument("db", new BsonString(dbName)).append("coll", new BsonString(collectionName)))
+                        .append("wallTime", new BsonDateTime(System.currentTimeMillis()));
+
+                if (documentKey != null)
+                    change.append("documentKey", documentKey);
+
+                this.history.add(CODEC.decode(new BsonDocumentReader(change), DecoderContext.builder().build()));
+
+                current = List.copyOf(this.subscriptions);
+            }
+
+            current.forEach(LocalSubscription::drain);
+        }
+
+        /* The operation time is the position in the history */
+
+        @Override
+        public BsonTimestamp operationTime() {
+            return new BsonTimestamp(0, this.size());
+        }
+
+        @Override
+        public Publisher<ChangeStreamDocument<Document>> watch(final BsonDocument resumeToken, final BsonTimestamp startAtOperationTime) {
+            return subscriber -> {
+                final int position;
+
+                if (resumeToken != null)
+                    position = Integer.parseInt(resumeToken.getString("_data").getValue()) + 1;
+                else if (startAtOperationTime != null)
+                    position = startAtOperationTime.getInc();
+                else
+                    position = this.size();
+
+                final var localSubscription = new LocalSubscription(subscriber, position);
+
+                synchronized (this) {
+                    this.subscriptions.add(localSubscription);
+                }
+
+                subscriber.onSubscribe(localSubscription);
+                localSubscription.drain();
+            };
+        }
+
+        private synchronized int size() {
+            return this.history.size();
+        }
+
+        private synchronized ChangeStreamDocument<Document> get(final int position) {
+            return position < this.history.size() ? this.history.get(position) : null;
+        }
+
+        private synchronized void remove(final LocalSubscription localSubscription) {
+            this.subscriptions.remove(localSubscription);
+        }
+
+        private final class LocalSubscription implements Subscription {
+            private final Subscriber<? super ChangeStreamDocument<Document>> subscriber;
+            private int position;
+            private long demand;
+            private boolean draining;
+            private volatile boolean done;
+
+            private LocalSubscription(final Subscriber<? super ChangeStreamDocument<Document>> subscriber, final int position) {
+                this.subscriber = subscriber;
+                this.position = position;
+            }
+
+            @Override
+            public void request(final long n) {
+                synchronized (this) {
+                    this.demand = Math.min(Long.MAX_VALUE - n, this.demand) + n;
+                }
+
+                this.drain();
+            }
+
+            @Override
+            public void cancel() {
+                this.done = true;
+
+                remove(this);
+            }
+
+            /*
+             * Deliver events while there is demand. A request made from
+             * onNext only raises the demand; the loop already running
+             * delivers the next event.
+             */
+            private void drain() {
+                synchronized (this) {
+                    if (this.draining)
+                        return;
+
+                    this.draining = true;
+                }
+
+                while (true) {
+                    final ChangeStreamDocument<Document> event;
+
+                    synchronized (this) {
+                        event = this.done || this.demand == 0 ? null : get(this.position);
+
+                        if (event == null) {
+                            this.draining = false;
+
+                            return;
+                        }
+
+                        this.position++;
+                        this.demand--;
+                    }
+
+                    this.subscriber.onNext(event);
+
+                    if (event.getOperationType() == OperationType.INVALIDATE) {
+                        this.cancel();
+                        this.subscriber.onComplete();
+                    }
+                }
+            }
+        }
+    }
+}
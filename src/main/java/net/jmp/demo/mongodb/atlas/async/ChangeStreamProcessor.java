@@ -0,0 +1,531 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ChangeStreamProcessor.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Consumes a change stream and hands its events to a handler in
+ * batches, processing several batches in parallel while keeping the
+ * events of any one document in order:
+ *
+ * - Events are assigned to a partition by their document key and
+ *   each partition has a single worker, so two changes to the same
+ *   document are never handled out of order or concurrently.
+ * - A partition's events are handed over once batchSize of them have
+ *   arrived or maxBatchWait has passed, whichever is first.
+ * - Demand is bounded: no more than maxInFlight events are requested
+ *   from the server beyond those handled, so a slow handler slows
+ *   the stream down instead of filling memory.
+ * - Resume tokens are checkpointed in the background. The token
+ *   saved is that of the newest event such that it and every event
+ *   before it have been handled, so a restart may repeat events but
+ *   never skips one.
+ *
+ * A batch whose handler keeps failing stops the processor, leaving
+ * its events to be delivered again after a restart.
+ */
+final class ChangeStreamProcessor implements AutoCloseable {
+    /**
+     * Handles one batch of events of one partition. It is never called
+     * concurrently for the same partition.
+     */
+    interface BatchHandler {
+        void handle(int partition, List<ChangeStreamDocument<Document>> batch);
+    }
+
+    interface CheckpointStore {
+        BsonDocument load();
+
+        void save(BsonDocument resumeToken);
+    }
+
+    private record Event(long sequence, ChangeStreamDocument<Document> change) {
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final CacheInvalidationBus.ChangeSource source;
+    private final BatchHandler handler;
+    private final CheckpointStore checkpointStore;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final Duration maxBatchWait;
+    private final Duration checkpointInterval;
+    private final List<List<Event>> buffers;
+    private final List<ExecutorService> workers;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    private final ConcurrentSkipListMap<Long, BsonDocument> pending = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, BsonDocument> handled = new ConcurrentSkipListMap<>();
+    private final Object progressLock = new Object();
+    private final Object creditLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAccumulator maxLagMillis = new LongAccumulator(Long::max, 0);
+    private volatile long lagMillis;
+    private volatile long startNanos;
+    private volatile BsonDocument lastReceivedToken;
+    private volatile Subscription subscription;
+    private long inFlight;
+    private long requested;
+    private volatile boolean failed;
+    private volatile boolean closed;
+
+    ChangeStreamProcessor(final CacheInvalidationBus.ChangeSource source,
+                          final BatchHandler handler,
+                          final CheckpointStore checkpointStore,
+                          final int partitions,
+                          final int batchSize,
+                          final Duration maxBatchWait,
+                          final Duration checkpointInterval) {
+        super();
+
+        if (partitions < 1 || batchSize < 1)
+            throw new IllegalArgumentException("partitions and batchSize must be at least 1");
+
+        this.source = source;
+        this.handler = handler;
+        this.checkpointStore = checkpointStore;
+        this.batchSize = batchSize;
+        this.maxInFlight = partitions * batchSize * 2;
+        this.maxAttempts = 3;
+        this.maxBatchWait = maxBatchWait;
+        this.checkpointInterval = checkpointInterval;
+        this.buffers = new ArrayList<>(partitions);
+        this.workers = new ArrayList<>(partitions);
+
+        for (int i = 0; i < partitions; i++) {
+            this.buffers.add(new ArrayList<>(batchSize));
+            this.workers.add(Executors.newSingleThreadExecutor(Thread.ofVirtual().factory()));
+        }
+    }
+
+    /**
+     * A change source for one collection.
+     *
+     * @param   mongoClient     The client
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @return                  The change source
+     */
+    static CacheInvalidationBus.ChangeSource forCollection(final MongoClient mongoClient,
+                                                           final String dbName,
+                                                           final String collectionName) {
+        return (resumeToken, startAtOperationTime) -> {
+            final var publisher = mongoClient.getDatabase(dbName).getCollection(collectionName).watch();
+
+            if (resumeToken != null)
+                return publisher.startAfter(resumeToken);
+
+            return startAtOperationTime == null ? publisher : publisher.startAtOperationTime(startAtOperationTime);
+        };
+    }
+
+    /**
+     * A checkpoint store that keeps the resume token of each named
+     * processor in a document of a collection.
+     *
+     * @param   mongoClient     The client
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the checkpoint collection
+     * @param   processorName   The name of the processor
+     * @return                  The checkpoint store
+     */
+    static CheckpointStore mongoCheckpointStore(final MongoClient mongoClient,
+                                                final String dbName,
+                                                final String collectionName,
+                                                final String processorName) {
+        final var collection = mongoClient.getDatabase(dbName).getCollection(collectionName, BsonDocument.class);
+        final var filter = Filters.eq("_id", processorName);
+
+        return new CheckpointStore() {
+            @Override
+            public BsonDocument load() {
+                final ObservableSubscriber<BsonDocument> subscriber = new OperationSubscriber<>();
+
+                subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+                collection.find(filter).first().subscribe(subscriber);
+
+                final var checkpoint = subscriber.first();
+
+                return checkpoint != null && checkpoint.isDocument("token") ? checkpoint.getDocument("token") : null;
+            }
+
+            @Override
+            public void save(final BsonDocument resumeToken) {
+                final var checkpoint = new Document("_id", processorName)
+                        .append("token", resumeToken)
+                        .append("updated", new Date());
+
+                final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(new MongoNamespace(dbName, collectionName));
+
+                subscriber.recording(collection.getNamespace(), "replaceOne", filter, 0);
+
+                mongoClient.getDatabase(dbName)
+                        .getCollection(collectionName)
+                        .replaceOne(filter, checkpoint, new ReplaceOptions().upsert(true))
+                        .subscribe(subscriber);
+
+                subscriber.await();
+            }
+        };
+    }
+
+    void start() {
+        this.logger.entry();
+
+        this.lastReceivedToken = this.checkpointStore.load();
+        this.startNanos = System.nanoTime();
+
+        if (this.lastReceivedToken != null)
+            this.logger.info("Resuming the change stream from {}", this.lastReceivedToken.toJson());
+
+        final var waitMillis = Math.max(1, this.maxBatchWait.toMillis());
+        final var checkpointMillis = Math.max(1, this.checkpointInterval.toMillis());
+
+        this.scheduler.scheduleWithFixedDelay(this::dispatchAll, waitMillis, waitMillis, TimeUnit.MILLISECONDS);
+        this.scheduler.scheduleWithFixedDelay(this::checkpoint, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+
+        this.subscribe();
+
+        this.logger.exit();
+    }
+
+    /**
+     * Wait until at least a number of events have been handled.
+     *
+     * @param   count   The number of events
+     * @param   timeout The longest time to wait
+     * @return          True if they were handled in time
+     */
+    boolean awaitProcessed(final long count, final Duration timeout) {
+        final var deadline = System.nanoTime() + timeout.toNanos();
+
+        while (this.processed.sum() < count && !this.failed && System.nanoTime() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+
+                return false;
+            }
+        }
+
+        return this.processed.sum() >= count;
+    }
+
+    /**
+     * Stop the stream, hand over the events already received, wait
+     * for the workers and save a final checkpoint.
+     */
+    @Override
+    public void close() {
+        this.logger.entry();
+
+        this.closed = true;
+
+        final var current = this.subscription;
+
+        if (current != null)
+            current.cancel();
+
+        this.scheduler.shutdownNow();
+        this.dispatchAll();
+
+        for (final var worker : this.workers) {
+            worker.shutdown();
+
+            try {
+                if (!worker.awaitTermination(30, TimeUnit.SECONDS))
+                    worker.shutdownNow();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.checkpoint();
+        this.logMetrics();
+
+        this.logger.exit();
+    }
+
+    void logMetrics() {
+        final var seconds = (System.nanoTime() - this.startNanos) / 1e9;
+
+        this.logger.info("Change stream: {} received, {} processed in {} batch(es), {} per second, lag {} ms (max {} ms), {} retry(ies), {} checkpoint(s)",
+                this.received.sum(),
+                this.processed.sum(),
+                this.batches.sum(),
+                String.format("%.1f", seconds > 0 ? this.processed.sum() / seconds : 0),
+                this.lagMillis,
+                this.maxLagMillis.get(),
+                this.retries.sum(),
+                this.checkpoints.sum());
+    }
+
+    private void subscribe() {
+        if (!this.closed && !this.failed)
+            this.source.watch(this.lastReceivedToken, null).subscribe(new ProcessorSubscriber());
+    }
+
+    private void receive(final ChangeStreamDocument<Document> change) {
+        final var event = new Event(this.sequence.getAndIncrement(), change);
+
+        this.pending.put(event.sequence(), change.getResumeToken());
+        this.lastReceivedToken = change.getResumeToken();
+        this.received.increment();
+
+        synchronized (this.creditLock) {
+            this.inFlight++;
+            this.requested = Math.max(0, this.requested - 1);
+        }
+
+        final var key = change.getDocumentKey();
+        final var partition = key == null ? 0 : Math.floorMod(key.hashCode(), this.buffers.size());
+
+        synchronized (this.buffers) {
+            final var buffer = this.buffers.get(partition);
+
+            buffer.add(event);
+
+            if (buffer.size() >= this.batchSize)
+                this.dispatch(partition);
+        }
+    }
+
+    private void dispatchAll() {
+        synchronized (this.buffers) {
+            for (int i = 0; i < this.buffers.size(); i++)
+                if (!this.buffers.get(i).isEmpty())
+                    this.dispatch(i);
+        }
+    }
+
+    /* Called holding the buffers lock, so batches reach a worker in arrival order */
+    private void dispatch(final int partition) {
+        final var buffer = this.buffers.get(partition);
+        final var batch = List.copyOf(buffer);
+
+        buffer.clear();
+
+        if (!this.workers.get(partition).isShutdown())
+            this.workers.get(partition).execute(() -> this.process(partition, batch));
+    }
+
+    private void process(final int partition, final List<Event> batch) {
+        if (this.failed)
+            return;
+
+        final var changes = batch.stream().map(Event::change).toList();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.handler.handle(partition, changes);
+
+                break;
+            } catch (final RuntimeException re) {
+                if (attempt >= this.maxAttempts) {
+                    this.logger.error("Stopping: a batch of partition {} failed {} times: {}", partition, attempt, re.getMessage());
+
+                    this.failed = true;
+
+                    final var current = this.subscription;
+
+                    if (current != null)
+                        current.cancel();
+
+                    return;
+                }
+
+                this.retries.increment();
+            }
+        }
+
+        // A checkpoint sees each event either pending or handled, never neither
+
+        synchronized (this.progressLock) {
+            for (final var event : batch) {
+                this.pending.remove(event.sequence());
+                this.handled.put(event.sequence(), event.change().getResumeToken());
+            }
+        }
+
+        this.processed.add(batch.size());
+        this.batches.increment();
+        this.recordLag(changes.getLast());
+
+        synchronized (this.creditLock) {
+            this.inFlight -= batch.size();
+        }
+
+        this.requestCredit();
+    }
+
+    /*
+     * Request what is left of maxInFlight once the events received
+     * but not yet handled and the demand already outstanding on the
+     * current subscription are counted.
+     */
+    private void requestCredit() {
+        final Subscription current;
+        final long credit;
+
+        synchronized (this.creditLock) {
+            current = this.subscription;
+            credit = this.maxInFlight - this.inFlight - this.requested;
+
+            if (current == null || credit <= 0 || this.closed || this.failed)
+                return;
+
+            this.requested += credit;
+        }
+
+        current.request(credit);
+    }
+
+    private void recordLag(final ChangeStreamDocument<Document> change) {
+        long eventMillis = 0;
+
+        if (change.getWallTime() != null)
+            eventMillis = change.getWallTime().getValue();
+        else if (change.getClusterTime() != null)
+            eventMillis = change.getClusterTime().getTime() * 1000L;
+
+        if (eventMillis > 0) {
+            this.lagMillis = Math.max(0, System.currentTimeMillis() - eventMillis);
+            this.maxLagMillis.accumulate(this.lagMillis);
+        }
+    }
+
+    /*
+     * Save the token of the newest handled event that has no unhandled
+     * event before it.
+     */
+    private synchronized void checkpoint() {
+        final BsonDocument token;
+
+        synchronized (this.progressLock) {
+            final var oldestPending = this.pending.isEmpty() ? Long.MAX_VALUE : this.pending.firstKey();
+            final var safe = this.handled.headMap(oldestPending);
+
+            token = safe.isEmpty() ? null : safe.lastEntry().getValue();
+
+            safe.clear();
+        }
+
+        if (token != null) {
+            try {
+                this.checkpointStore.save(token);
+                this.checkpoints.increment();
+            } catch (final RuntimeException re) {
+                this.logger.warn("The checkpoint was not saved: {}", re.getMessage());
+            }
+        }
+    }
+
+    private final class ProcessorSubscriber implements Subscriber<ChangeStreamDocument<Document>> {
+        @Override
+        public void onSubscribe(final Subscription s) {
+            // Demand on an earlier subscription ended with it; events it delivered may still be in flight
+
+            synchronized (creditLock) {
+                subscription = s;
+                requested = 0;
+            }
+
+            if (closed || failed)
+                s.cancel();
+            else
+                requestCredit();
+        }
+
+        @Override
+        public void onNext(final ChangeStreamDocument<Document> change) {
+            receive(change);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            if (!closed && !failed) {
+                logger.warn("The change stream failed; reopening it: {}", t.getMessage());
+
+                scheduler.schedule(ChangeStreamProcessor.this::subscribe, 1, TimeUnit.SECONDS);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!closed && !failed)
+                scheduler.execute(ChangeStreamProcessor.this::subscribe);
+        }
+    }
+}
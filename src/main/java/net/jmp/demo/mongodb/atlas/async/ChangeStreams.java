@@ -0,0 +1,189 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ChangeStreams.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+final class ChangeStreams {
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final String checkpointCollectionName;
+    private final boolean enabled;
+    private final int partitions;
+    private final int batchSize;
+    private final Duration maxBatchWait;
+    private final Duration checkpointInterval;
+    private final int documents;
+
+    ChangeStreams(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.dbName = properties.getProperty("mongodb.changestream.db", "training");
+        this.collectionName = properties.getProperty("mongodb.changestream.collection", "colors");
+        this.checkpointCollectionName = properties.getProperty("mongodb.changestream.checkpoint.collection", "changeStreamCheckpoints");
+        this.enabled = Boolean.parseBoolean(properties.getProperty("mongodb.changestream.enabled", "false"));
+        this.partitions = Integer.parseInt(properties.getProperty("mongodb.changestream.partitions", "4"));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.changestream.batchSize", "100"));
+        this.maxBatchWait = Duration.ofMillis(Long.parseLong(properties.getProperty("mongodb.changestream.maxBatchWaitMillis", "250")));
+        this.checkpointInterval = Duration.ofMillis(Long.parseLong(properties.getProperty("mongodb.changestream.checkpointMillis", "1000")));
+        this.documents = Integer.parseInt(properties.getProperty("mongodb.changestream.documents", "1000"));
+    }
+
+    void run() {
+        this.logger.entry();
+
+        if (!this.enabled) {
+            this.logger.info("Change stream processing is disabled");
+            this.logger.exit();
+
+            return;
+        }
+
+        this.logger.info("Beginning change stream operations...");
+
+        final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+        final ChangeStreamProcessor.BatchHandler handler = (partition, batch) -> {
+            for (final ChangeStreamDocument<Document> change : batch)
+                counts.computeIfAbsent(change.getOperationTypeString(), type -> new LongAdder()).increment();
+
+            this.logger.debug("Partition {} handled {} event(s)", partition, batch.size());
+        };
+
+        final var source = ChangeStreamProcessor.forCollection(this.mongoClient, this.dbName, this.collectionName);
+        final var checkpointStore = ChangeStreamProcessor.mongoCheckpointStore(this.mongoClient,
+                this.dbName,
+                this.checkpointCollectionName,
+                this.dbName + "." + this.collectionName);
+
+        try (final var processor = new ChangeStreamProcessor(source,
+                handler,
+                checkpointStore,
+                this.partitions,
+                this.batchSize,
+                this.maxBatchWait,
+                this.checkpointInterval)) {
+            processor.start();
+
+            // Give the change stream time to open; earlier writes are not seen on a first run
+
+            TimeUnit.SECONDS.sleep(1);
+
+            this.writeChanges();
+
+            if (!processor.awaitProcessed(this.documents * 3L, Duration.ofMinutes(2)))
+                this.logger.warn("Not every change was processed in time");
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException re) {
+            this.logger.error(re.getMessage());
+        }
+
+        counts.forEach((type, count) -> this.logger.info("{}: {}", type, count.sum()));
+
+        this.logger.info("Ending change stream operations...");
+        this.logger.exit();
+    }
+
+    /*
+     * An insert, an update and a delete of every document
+     */
+    private void writeChanges() {
+        this.logger.entry();
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var filter = Filters.eq("source", "changeStreams");
+
+        final List<Document> inserts = new ArrayList<>(this.documents);
+
+        for (int i = 0; i < this.documents; i++)
+            inserts.add(new Document("color", "cdc-" + i).append("qty", i).append("source", "changeStreams"));
+
+        final ObservableSubscriber<InsertManyResult> insertSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        insertSubscriber.recording(collection.getNamespace(), "insertMany", null, inserts.size());
+
+        collection.insertMany(inserts).subscribe(insertSubscriber);
+
+        insertSubscriber.await();
+
+        final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        updateSubscriber.recording(collection.getNamespace(), "updateMany", filter, 0);
+
+        collection.updateMany(filter, Updates.inc("qty", 1)).subscribe(updateSubscriber);
+
+        updateSubscriber.await();
+
+        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        deleteSubscriber.recording(collection.getNamespace(), "deleteMany", filter, 0);
+
+        collection.deleteMany(filter).subscribe(deleteSubscriber);
+
+        deleteSubscriber.await();
+
+        this.logger.exit();
+    }
+}
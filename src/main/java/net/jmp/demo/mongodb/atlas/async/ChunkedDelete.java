@@ -0,0 +1,354 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ChunkedDelete.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.Date;
+import java.util.Properties;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Deletes documents from a collection. In chunked mode the collection
+ * is walked in ascending _id order and deleted one bounded _id range
+ * at a time, no faster than a configured number of documents per
+ * second, so that a purge does not turn into one long server operation
+ * that hurts replication lag and foreground latency. Otherwise it
+ * issues a single deleteMany.
+ *
+ * After every chunk the last deleted _id is checkpointed. A run that
+ * was interrupted resumes after that _id the next time the same filter
+ * is deleted from the same collection. A run can also be paused and
+ * resumed from another thread.
+ *
+ * The _id values are assumed to be of a single BSON type, since range
+ * filters only match values of the same type.
+ *
+ * When truncation is turned on, deleteAll truncates a large enough
+ * collection instead (see Collections.truncate). It is opt-in because
+ * a truncate also removes documents written while it runs. A filtered
+ * delete never truncates.
+ */
+final class ChunkedDelete {
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final boolean chunked;
+    private final int batchSize;
+    private final long maxDocumentsPerSecond;
+    private final String checkpointCollectionName;
+    private final boolean truncate;
+    private final long truncateMinDocuments;
+    private boolean paused;
+
+    ChunkedDelete(final Properties properties,
+                  final MongoClient mongoClient,
+                  final String dbName,
+                  final String collectionName) {
+        super();
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+
+        this.chunked = Boolean.parseBoolean(properties.getProperty("mongodb.delete.chunked", "false"));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.delete.chunked.batchSize", "1000"));
+        this.maxDocumentsPerSecond = Long.parseLong(properties.getProperty("mongodb.delete.chunked.maxDocumentsPerSecond", "5000"));
+        this.checkpointCollectionName = properties.getProperty("mongodb.delete.chunked.checkpoint.collection", "deleteCheckpoints");
+        this.truncate = Boolean.parseBoolean(properties.getProperty("mongodb.delete.truncate", "false"));
+        this.truncateMinDocuments = Long.parseLong(properties.getProperty("mongodb.delete.truncate.minDocuments", "10000"));
+    }
+
+    long deleteAll() {
+        this.logger.entry();
+
+        final long result;
+
+        final var total = this.truncate ? this.countIfLarge() : -1;
+
+        if (total >= 0 && new Collections(this.mongoClient).truncate(this.dbName, this.collectionName)) {
+            result = total;
+
+            this.logger.info("About {} document(s) were deleted", result);
+        } else {
+            result = this.delete(Filters.empty());
+        }
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    long delete(final Bson filter) {
+        this.logger.entry(filter);
+
+        final var result = this.chunked ? this.deleteInChunks(filter) : this.deleteAtOnce(filter);
+
+        this.logger.info("{} document(s) were deleted", result);
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    synchronized void pause() {
+        this.paused = true;
+
+        this.logger.info("Pausing the delete from {}", this.collectionName);
+    }
+
+    synchronized void resume() {
+        this.paused = false;
+
+        this.notifyAll();
+
+        this.logger.info("Resuming the delete from {}", this.collectionName);
+    }
+
+    synchronized boolean isPaused() {
+        return this.paused;
+    }
+
+    /*
+     * Returns the estimated number of documents if the collection
+     * has at least the minimum number for truncation; otherwise -1.
+     */
+    private long countIfLarge() {
+        this.logger.entry();
+
+        final var collection = this.mongoClient.getDatabase(this.dbName).getCollection(this.collectionName);
+
+        final ObservableSubscriber<Long> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "estimatedDocumentCount", null, 0);
+
+        collection.estimatedDocumentCount().subscribe(subscriber);
+
+        final long total = subscriber.first();
+        final var result = total > 0 && total >= this.truncateMinDocuments ? total : -1;
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private long deleteAtOnce(final Bson filter) {
+        this.logger.entry(filter);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "deleteMany", filter, 0);
+
+        collection.deleteMany(filter).subscribe(subscriber);
+
+        final var result = subscriber.first().getDeletedCount();
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private long deleteInChunks(final Bson filter) {
+        this.logger.entry(filter);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var filterJson = filter.toBsonDocument().toJson();
+        final var start = System.nanoTime();
+
+        var lastId = this.getCheckpoint(filterJson);
+        var deleted = 0L;
+        var completed = false;
+
+        if (lastId != null)
+            this.logger.info("Resuming the delete from {} after _id {}", this.collectionName, lastId);
+
+        while (!completed && this.awaitUnpaused()) {
+            final var range = lastId == null ? filter : Filters.and(filter, Filters.gt("_id", lastId));
+
+            final ObservableSubscriber<Document> findSubscriber = new OperationSubscriber<>();
+
+            findSubscriber.recording(collection.getNamespace(), "find", range, this.batchSize);
+
+            collection.find(range)
+                    .projection(Projections.include("_id"))
+                    .sort(Sorts.ascending("_id"))
+                    .limit(this.batchSize)
+                    .subscribe(findSubscriber);
+
+            final var ids = findSubscriber.get();
+
+            if (ids.isEmpty()) {
+                completed = true;
+            } else {
+                final var firstId = ids.getFirst().get("_id");
+                final var chunkLastId = ids.getLast().get("_id");
+
+                final var chunk = Filters.and(filter, Filters.gte("_id", firstId), Filters.lte("_id", chunkLastId));
+                final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+                deleteSubscriber.recording(collection.getNamespace(), "deleteMany", chunk, 0);
+
+                collection.deleteMany(chunk)
+                        .subscribe(deleteSubscriber);
+
+                deleted += deleteSubscriber.first().getDeletedCount();
+                lastId = chunkLastId;
+
+                this.setCheckpoint(filterJson, lastId);
+                this.throttle(deleted, start);
+            }
+        }
+
+        if (completed)
+            this.clearCheckpoint();
+        else
+            this.logger.warn("The delete from {} stopped after _id {}; it will resume from there", this.collectionName, lastId);
+
+        this.logger.exit(deleted);
+
+        return deleted;
+    }
+
+    /*
+     * Blocks while paused; false means the thread was interrupted.
+     */
+    private synchronized boolean awaitUnpaused() {
+        try {
+            while (this.paused)
+                this.wait();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    private void throttle(final long deleted, final long start) {
+        if (this.maxDocumentsPerSecond > 0) {
+            final var earliest = start + TimeUnit.SECONDS.toNanos(deleted) / this.maxDocumentsPerSecond;
+            final var wait = earliest - System.nanoTime();
+
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private String getCheckpointId() {
+        return this.dbName + "." + this.collectionName;
+    }
+
+    private Object getCheckpoint(final String filterJson) {
+        this.logger.entry(filterJson);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.checkpointCollectionName);
+
+        final var filter = Filters.eq("_id", this.getCheckpointId());
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+        collection.find(filter).first().subscribe(subscriber);
+
+        final var checkpoint = subscriber.first();
+
+        // A checkpoint left by a delete with another filter does not apply
+
+        final var result = checkpoint != null && filterJson.equals(checkpoint.getString("filter"))
+                ? checkpoint.get("lastId")
+                : null;
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private void setCheckpoint(final String filterJson, final Object lastId) {
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.checkpointCollectionName);
+
+        final var checkpoint = new Document("_id", this.getCheckpointId())
+                .append("filter", filterJson)
+                .append("lastId", lastId)
+                .append("updated", new Date());
+
+        final var filter = Filters.eq("_id", this.getCheckpointId());
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "replaceOne", filter, 0);
+
+        collection.replaceOne(filter, checkpoint, new ReplaceOptions().upsert(true))
+                .subscribe(subscriber);
+
+        subscriber.await();
+    }
+
+    private void clearCheckpoint() {
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.checkpointCollectionName);
+
+        final var filter = Filters.eq("_id", this.getCheckpointId());
+        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "deleteOne", filter, 0);
+
+        collection.deleteOne(filter).subscribe(subscriber);
+
+        subscriber.await();
+    }
+}
@@ -0,0 +1,476 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ClaimEngine.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.bson.types.ObjectId;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * A reusable, high-contention claim engine built on the pattern in
+ * Compound.bookRoomWithoutRaceCondition: an item is claimed by a
+ * single atomic update whose filter only matches unclaimed items.
+ *
+ * Every claim carries a lease. An item whose lease has expired, for
+ * example because its claimant crashed, is claimable again. Leases
+ * are compared against the client clock, so claimants' clocks should
+ * be synchronized to well within the lease duration.
+ *
+ * The engine creates the indexes it relies on the first time it
+ * claims: one on reserved and _id and one on reserved and
+ * leaseExpires, which bound the two branches of the claimable
+ * predicate, and a sparse one on claimToken for reading back a batch.
+ */
+final class ClaimEngine {
+    static final String RESERVED = "reserved";
+    static final String LEASE_EXPIRES = "leaseExpires";
+    static final String CLAIM_TOKEN = "claimToken";
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final String claimantField;
+    private final Duration leaseDuration;
+    private final ClaimMetrics metrics = new ClaimMetrics();
+    private volatile boolean indexed;
+    private volatile Object lowestId;
+    private volatile Object highestId;
+
+    /**
+     * Per-claimant claim counts and a fairness measure.
+     */
+    static final class ClaimMetrics {
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder claimed = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final Map<String, LongAdder> claimedByClaimant = new ConcurrentHashMap<>();
+
+        private void record(final String claimant, final int count) {
+            this.attempts.increment();
+
+            final var claimantCount = this.claimedByClaimant.computeIfAbsent(claimant, k -> new LongAdder());
+
+            if (count == 0) {
+                this.misses.increment();
+            } else {
+                this.claimed.add(count);
+
+                claimantCount.add(count);
+            }
+        }
+
+        long getAttempts() {
+            return this.attempts.sum();
+        }
+
+        long getClaimed() {
+            return this.claimed.sum();
+        }
+
+        long getMisses() {
+            return this.misses.sum();
+        }
+
+        Map<String, Long> getClaimedByClaimant() {
+            final Map<String, Long> result = new ConcurrentHashMap<>();
+
+            this.claimedByClaimant.forEach((claimant, count) -> result.put(claimant, count.sum()));
+
+            return result;
+        }
+
+        /**
+         * Jain's fairness index over the items claimed by each
+         * claimant: 1.0 when every claimant got the same number,
+         * approaching 1/n when a single claimant got them all.
+         *
+         * @return  double
+         */
+        double getFairnessIndex() {
+            double sum = 0;
+            double sumOfSquares = 0;
+            int n = 0;
+
+            for (final var count : this.claimedByClaimant.values()) {
+                final double x = count.sum();
+
+                sum += x;
+                sumOfSquares += x * x;
+                n++;
+            }
+
+            return sumOfSquares == 0 ? 1.0 : (sum * sum) / (n * sumOfSquares);
+        }
+    }
+
+    ClaimEngine(final MongoClient mongoClient,
+                final String dbName,
+                final String collectionName,
+                final String claimantField,
+                final Duration leaseDuration) {
+        super();
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+        this.claimantField = claimantField;
+        this.leaseDuration = leaseDuration;
+    }
+
+    ClaimMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Claim one item in a single round trip.
+     *
+     * @param   claimant    The name of the claimant
+     * @return              The claimed item as it is after the claim
+     */
+    Optional<Document> claim(final String claimant) {
+        Trace.entry(this.logger, claimant);
+
+        final var now = new Date();
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        this.ensureIndexes(collection);
+
+        final var filter = this.claimable(now);
+        final var options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.AFTER);
+
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
+
+        collection.findOneAndUpdate(filter, this.claimUpdate(claimant, now, null), options)
+                .subscribe(subscriber);
+
+        final var result = Optional.ofNullable(subscriber.first());
+
+        this.metrics.record(claimant, result.isPresent() ? 1 : 0);
+
+        Trace.exit(this.logger, result);
+
+        return result;
+    }
+
+    /**
+     * Claim up to maxItems items in a constant number of round trips:
+     * up to maxItems claimable ids are read from the indexes starting
+     * at a random _id, those still claimable are stamped with a unique
+     * claim token in one updateMany, and the items carrying the token
+     * are read back. Under contention fewer than maxItems may be won;
+     * every item returned is held exclusively.
+     *
+     * @param   claimant    The name of the claimant
+     * @param   maxItems    The largest number of items to claim
+     * @return              The claimed items as they are after the claim
+     */
+    List<Document> claim(final String claimant, final int maxItems) {
+        Trace.entry(this.logger, claimant, maxItems);
+
+        if (maxItems <= 0)
+            throw new IllegalArgumentException("The number of items to claim must be positive: " + maxItems);
+
+        final var now = new Date();
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        this.ensureIndexes(collection);
+
+        // A random start spreads concurrent claimants over different candidates
+
+        final var claimable = this.claimable(now);
+        final var start = this.randomStart();
+        final List<Object> ids = new ArrayList<>();
+
+        if (start == null) {
+            this.findIds(collection, claimable, maxItems, ids);
+        } else {
+            this.findIds(collection, Filters.and(claimable, Filters.gte("_id", start)), maxItems, ids);
+
+            // Wrap around to the ids below the start
+
+            if (ids.size() < maxItems)
+                this.findIds(collection, Filters.and(claimable, Filters.lt("_id", start)), maxItems - ids.size(), ids);
+        }
+
+        List<Document> result = List.of();
+
+        if (!ids.isEmpty()) {
+            final var token = new ObjectId();
+            final var filter = Filters.and(Filters.in("_id", ids), claimable);
+
+            final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            updateSubscriber.recording(collection.getNamespace(), "updateMany", filter, 0);
+
+            collection.updateMany(filter, this.claimUpdate(claimant, now, token))
+                    .subscribe(updateSubscriber);
+
+            if (updateSubscriber.first().getModifiedCount() > 0) {
+                final var claimed = Filters.eq(CLAIM_TOKEN, token);
+                final ObservableSubscriber<Document> claimedSubscriber = new OperationSubscriber<>();
+
+                claimedSubscriber.recording(collection.getNamespace(), "find", claimed, 0);
+
+                collection.find(claimed).subscribe(claimedSubscriber);
+
+                result = claimedSubscriber.get();
+            }
+        }
+
+        this.metrics.record(claimant, result.size());
+
+        Trace.exit(this.logger, result);
+
+        return result;
+    }
+
+    /**
+     * Extend the lease on an item still held by the claimant.
+     *
+     * @param   claimant    The name of the claimant
+     * @param   id          The _id of the item
+     * @return              True if the lease was extended
+     */
+    boolean renew(final String claimant, final Object id) {
+        Trace.entry(this.logger, claimant, id);
+
+        final var leaseExpires = new Date(System.currentTimeMillis() + this.leaseDuration.toMillis());
+
+        final var result = this.updateHeld(claimant, id, Updates.set(LEASE_EXPIRES, leaseExpires));
+
+        Trace.exit(this.logger, result);
+
+        return result;
+    }
+
+    /**
+     * Give an item back so it can be claimed again.
+     *
+     * @param   claimant    The name of the claimant
+     * @param   id          The _id of the item
+     * @return              True if the item was released
+     */
+    boolean release(final String claimant, final Object id) {
+        Trace.entry(this.logger, claimant, id);
+
+        final var update = Updates.combine(
+                Updates.set(RESERVED, false),
+                Updates.set(this.claimantField, null),
+                Updates.unset(LEASE_EXPIRES),
+                Updates.unset(CLAIM_TOKEN)
+        );
+
+        final var result = this.updateHeld(claimant, id, update);
+
+        Trace.exit(this.logger, result);
+
+        return result;
+    }
+
+    /*
+     * Claimable ids in index order from wherever the filter starts.
+     * The two branches of the claimable predicate are each bounded by
+     * an index, so no more than limit keys of each are read.
+     */
+    private void findIds(final MongoCollection<Document> collection,
+                         final Bson filter,
+                         final int limit,
+                         final List<Object> ids) {
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "find", filter, limit);
+        subscriber.deadline(deadline);
+
+        collection.find(filter)
+                .projection(Projections.include("_id"))
+                .limit(limit)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(subscriber);
+
+        subscriber.get().forEach(candidate -> ids.add(candidate.get("_id")));
+    }
+
+    /*
+     * A random _id between the lowest and highest seen when the
+     * indexes were made, or null to start at the beginning when the
+     * ids are not all numbers or all ObjectIds. Ids added since then
+     * are still found, above the start or by wrapping around.
+     */
+    private Object randomStart() {
+        final var lowest = this.lowestId;
+        final var highest = this.highestId;
+        final var random = ThreadLocalRandom.current();
+
+        if (lowest instanceof Number low && highest instanceof Number high && low.doubleValue() < high.doubleValue()) {
+            if (low instanceof Double || high instanceof Double)
+                return random.nextDouble(low.doubleValue(), high.doubleValue());
+
+            return random.nextLong(low.longValue(), high.longValue() + 1);
+        }
+
+        if (lowest instanceof ObjectId low && highest instanceof ObjectId high && low.getTimestamp() < high.getTimestamp())
+            return ObjectId.getSmallestWithDate(new Date(1000L * random.nextLong(low.getTimestamp(), high.getTimestamp() + 1L)));
+
+        return null;
+    }
+
+    private void ensureIndexes(final MongoCollection<Document> collection) {
+        if (this.indexed)
+            return;
+
+        final List<IndexModel> indexes = List.of(
+                new IndexModel(Indexes.ascending(RESERVED, "_id"), new IndexOptions().name("reserved_id")),
+                new IndexModel(Indexes.ascending(RESERVED, LEASE_EXPIRES), new IndexOptions().name("reserved_leaseExpires")),
+                new IndexModel(Indexes.ascending(CLAIM_TOKEN), new IndexOptions().name("claimToken").sparse(true))
+        );
+
+        final ObservableSubscriber<String> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "createIndexes", null, indexes.size());
+
+        collection.createIndexes(indexes).subscribe(subscriber);
+
+        subscriber.await();
+
+        this.lowestId = this.boundingId(collection, Sorts.ascending("_id"));
+        this.highestId = this.boundingId(collection, Sorts.descending("_id"));
+        this.indexed = true;
+    }
+
+    private Object boundingId(final MongoCollection<Document> collection, final Bson sort) {
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "find", null, 1);
+
+        collection.find()
+                .projection(Projections.include("_id"))
+                .sort(sort)
+                .first()
+                .subscribe(subscriber);
+
+        final var document = subscriber.first();
+
+        return document != null ? document.get("_id") : null;
+    }
+
+    private boolean updateHeld(final String claimant, final Object id, final Bson update) {
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var filter = Filters.and(
+                Filters.eq("_id", id),
+                Filters.eq(RESERVED, true),
+                Filters.eq(this.claimantField, claimant)
+        );
+
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
+
+        collection.updateOne(filter, update).subscribe(subscriber);
+
+        return subscriber.first().getModifiedCount() == 1;
+    }
+
+    private Bson claimable(final Date now) {
+        return Filters.or(
+                Filters.eq(RESERVED, false),
+                Filters.and(Filters.eq(RESERVED, true), Filters.lt(LEASE_EXPIRES, now))
+        );
+    }
+
+    private Bson claimUpdate(final String claimant, final Date now, final ObjectId token) {
+        final var leaseExpires = new Date(now.getTime() + this.leaseDuration.toMillis());
+
+        return Updates.combine(
+                Updates.set(RESERVED, true),
+                Updates.set(this.claimantField, claimant),
+                Updates.set(LEASE_EXPIRES, leaseExpires),
+                token != null ? Updates.set(CLAIM_TOKEN, token) : Updates.unset(CLAIM_TOKEN)
+        );
+    }
+
+    void logMetrics() {
+        Trace.entry(this.logger);
+
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("Claim attempts: {}", this.metrics.getAttempts());
+            this.logger.info("Items claimed: {}", this.metrics.getClaimed());
+            this.logger.info("Attempts that claimed nothing: {}", this.metrics.getMisses());
+            this.logger.info("Items claimed by claimant: {}", this.metrics.getClaimedByClaimant());
+            this.logger.info("Fairness index: {}", String.format("%.3f", this.metrics.getFairnessIndex()));
+        }
+
+        Trace.exit(this.logger);
+    }
+}
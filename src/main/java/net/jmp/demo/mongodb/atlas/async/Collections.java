@@ -1,16 +1,17 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Collections.java  0.10.0  10/19/2026
  * (#)Collections.java  0.7.0   01/09/2024
  * (#)Collections.java  0.2.0   12/20/2023
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.2.0
  *
  * MIT License
  *
- * Copyright (c) 2023, 2024 Jonathan M. Parker
+ * Copyright (c) 2023, 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -31,9 +32,26 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.client.model.ClusteredIndexOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoDatabase;
 
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
 import org.slf4j.LoggerFactory;
 
 import org.slf4j.ext.XLogger;
@@ -57,6 +75,90 @@ final class Collections {
         this.logger.exit();
     }
 
+    /**
+     * Create a time-series collection unless it exists. Measurements
+     * are stored in a columnar layout bucketed by the meta field, so
+     * the collection is much smaller and cheaper to scan by time than
+     * the same documents in a regular collection.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @param   timeField       The field holding the time of each measurement
+     * @param   metaField       The field identifying the series, or null
+     * @param   granularity     The expected interval between measurements of a series
+     * @param   expireAfter     How long measurements are kept, or null to keep them
+     * @return                  boolean True if the collection was created by this call
+     * @throws  IllegalStateException   If a collection of that name exists but is not a time-series collection
+     */
+    boolean ensureTimeSeriesCollection(final String dbName,
+                                       final String collectionName,
+                                       final String timeField,
+                                       final String metaField,
+                                       final TimeSeriesGranularity granularity,
+                                       final Duration expireAfter) {
+        this.logger.entry(dbName, collectionName, timeField, metaField, granularity, expireAfter);
+
+        var result = false;
+
+        final var collectionInfo = this.getCollectionInfo(dbName, collectionName);
+
+        if (collectionInfo == null) {
+            final var timeSeriesOptions = new TimeSeriesOptions(timeField)
+                    .metaField(metaField)
+                    .granularity(granularity);
+
+            final var options = new CreateCollectionOptions().timeSeriesOptions(timeSeriesOptions);
+
+            if (expireAfter != null)
+                options.expireAfter(expireAfter.toSeconds(), TimeUnit.SECONDS);
+
+            result = this.createCollection(dbName, collectionName, options);
+        } else if (!"timeseries".equals(collectionInfo.getString("type"))) {
+            throw new IllegalStateException("Collection " + collectionName + " in database " + dbName + " is a " + collectionInfo.getString("type") + ", not a time-series collection");
+        }
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    /**
+     * Create a collection clustered on _id unless it exists. The
+     * documents are stored in _id order, so there is no separate _id
+     * index to maintain and range scans on _id read adjacent records.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @param   expireAfter     How long documents are kept by their _id time, or null to keep them
+     * @return                  boolean True if the collection was created by this call
+     * @throws  IllegalStateException   If a collection of that name exists but is not clustered
+     */
+    boolean ensureClusteredCollection(final String dbName,
+                                      final String collectionName,
+                                      final Duration expireAfter) {
+        this.logger.entry(dbName, collectionName, expireAfter);
+
+        var result = false;
+
+        final var collectionInfo = this.getCollectionInfo(dbName, collectionName);
+
+        if (collectionInfo == null) {
+            final var options = new CreateCollectionOptions()
+                    .clusteredIndexOptions(new ClusteredIndexOptions(new Document("_id", 1), true));
+
+            if (expireAfter != null)
+                options.expireAfter(expireAfter.toSeconds(), TimeUnit.SECONDS);
+
+            result = this.createCollection(dbName, collectionName, options);
+        } else if (!collectionInfo.get("options", new Document()).containsKey("clusteredIndex")) {
+            throw new IllegalStateException("Collection " + collectionName + " in database " + dbName + " exists but is not clustered");
+        }
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
     boolean existsCollection(final String dbName, final String collectionName) {
         this.logger.entry(dbName, collectionName);
 
@@ -65,6 +167,8 @@ final class Collections {
         final MongoDatabase database = this.mongoClient.getDatabase(dbName);
         final ObservableSubscriber<String> listSubscriber = new OperationSubscriber<>();
 
+        listSubscriber.recording(new MongoNamespace(dbName, collectionName), "listCollectionNames", null, 0);
+
         database.listCollectionNames()
                 .subscribe(listSubscriber);
 
@@ -95,13 +199,49 @@ final class Collections {
         return result;
     }
 
-    private void createCollection(final String dbName, final String collectionName) {
+    /**
+     * The listCollections entry of a collection.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @return                  org.bson.Document The entry, or null if there is no such collection
+     */
+    private Document getCollectionInfo(final String dbName, final String collectionName) {
         this.logger.entry(dbName, collectionName);
 
         final MongoDatabase database = this.mongoClient.getDatabase(dbName);
-        final ObservableSubscriber<Void> voidSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> listSubscriber = new OperationSubscriber<>();
+
+        listSubscriber.recording(new MongoNamespace(dbName, collectionName), "listCollections", null, 0);
 
-        database.createCollection(collectionName)
+        database.listCollections()
+                .filter(Filters.eq("name", collectionName))
+                .subscribe(listSubscriber);
+
+        final var collectionInfo = listSubscriber.first();
+
+        this.logger.exit(collectionInfo);
+
+        return collectionInfo;
+    }
+
+    private void createCollection(final String dbName, final String collectionName) {
+        this.createCollection(dbName, collectionName, new CreateCollectionOptions());
+    }
+
+    private boolean createCollection(final String dbName,
+                                     final String collectionName,
+                                     final CreateCollectionOptions options) {
+        this.logger.entry(dbName, collectionName, options);
+
+        var result = false;
+
+        final MongoDatabase database = this.mongoClient.getDatabase(dbName);
+        final ObservableSubscriber<Void> voidSubscriber = new OperationSubscriber<>(new MongoNamespace(dbName, collectionName));
+
+        voidSubscriber.recording(new MongoNamespace(dbName, collectionName), "createCollection", null, 0);
+
+        database.createCollection(collectionName, options)
                 .subscribe(voidSubscriber);
 
         voidSubscriber.await();
@@ -110,9 +250,13 @@ final class Collections {
             this.logger.error(voidSubscriber.getError().getMessage());
         } else {
             this.logger.info("Collection {} created in database {}", collectionName, dbName);
+
+            result = true;
         }
 
-        this.logger.exit();
+        this.logger.exit(result);
+
+        return result;
     }
 
     void dropCollection(final String dbName, final String collectionName) {
@@ -121,7 +265,9 @@ final class Collections {
         final var database = this.mongoClient.getDatabase(dbName);
         final var collection = database.getCollection(collectionName);
 
-        final ObservableSubscriber<Void> voidSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Void> voidSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        voidSubscriber.recording(collection.getNamespace(), "drop", null, 0);
 
         collection.drop()
                 .subscribe(voidSubscriber);
@@ -136,4 +282,113 @@ final class Collections {
 
         this.logger.exit();
     }
+
+    /**
+     * Remove every document by dropping the collection and creating
+     * it again with the same options and secondary indexes. This is
+     * far cheaper than a deleteMany that removes documents one at a
+     * time, but it is not atomic: concurrent readers may briefly see
+     * no collection, and concurrent writers may recreate it with the
+     * default options.
+     *
+     * Only regular collections are truncated; views and time series
+     * collections are left alone.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @return                  boolean True if the collection was truncated
+     */
+    boolean truncate(final String dbName, final String collectionName) {
+        this.logger.entry(dbName, collectionName);
+
+        var result = false;
+
+        final MongoDatabase database = this.mongoClient.getDatabase(dbName);
+        final var collection = database.getCollection(collectionName);
+        final var collectionInfo = this.getCollectionInfo(dbName, collectionName);
+
+        if (collectionInfo == null) {
+            this.logger.warn("Collection {} does not exist in database {}", collectionName, dbName);
+        } else if (!"collection".equals(collectionInfo.getString("type"))) {
+            this.logger.warn("Collection {} in database {} is a {} and cannot be truncated", collectionName, dbName, collectionInfo.getString("type"));
+        } else {
+            final var options = collectionInfo.get("options", new Document());
+            final var indexes = this.getSecondaryIndexes(dbName, collectionName);
+
+            final ObservableSubscriber<Void> dropSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            dropSubscriber.recording(collection.getNamespace(), "drop", null, 0);
+
+            collection.drop().subscribe(dropSubscriber);
+
+            dropSubscriber.await();
+
+            // Recreate with the raw options so that none are lost in translation
+
+            final var create = new Document("create", collectionName);
+
+            options.forEach(create::append);
+
+            final var clusteredIndex = create.get("clusteredIndex", Document.class);
+
+            if (clusteredIndex != null)
+                clusteredIndex.remove("v");
+
+            final ObservableSubscriber<Document> createSubscriber = new OperationSubscriber<>();
+
+            createSubscriber.recording(collection.getNamespace(), "create", null, 0);
+
+            database.runCommand(create).subscribe(createSubscriber);
+
+            createSubscriber.await();
+
+            // All the indexes are built by one command in one pass over an empty collection
+
+            if (!indexes.isEmpty()) {
+                final ObservableSubscriber<Document> indexSubscriber = new OperationSubscriber<>();
+
+                indexSubscriber.recording(collection.getNamespace(), "createIndexes", null, indexes.size());
+
+                database.runCommand(new Document("createIndexes", collectionName).append("indexes", indexes))
+                        .subscribe(indexSubscriber);
+
+                indexSubscriber.await();
+            }
+
+            this.logger.info("Collection {} truncated in database {}; {} index(es) restored", collectionName, dbName, indexes.size());
+
+            result = true;
+        }
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private List<Document> getSecondaryIndexes(final String dbName, final String collectionName) {
+        this.logger.entry(dbName, collectionName);
+
+        final var database = this.mongoClient.getDatabase(dbName);
+        final var collection = database.getCollection(collectionName);
+
+        final ObservableSubscriber<Document> indexSubscriber = new OperationSubscriber<>();
+
+        indexSubscriber.recording(collection.getNamespace(), "listIndexes", null, 0);
+
+        collection.listIndexes().subscribe(indexSubscriber);
+
+        final List<Document> indexes = new ArrayList<>();
+
+        for (final var index : indexSubscriber.get()) {
+            if (!"_id_".equals(index.getString("name"))) {
+                index.remove("ns");
+
+                indexes.add(index);
+            }
+        }
+
+        this.logger.exit(indexes);
+
+        return indexes;
+    }
 }
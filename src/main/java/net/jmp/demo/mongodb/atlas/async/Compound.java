@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Compound.java 0.10.0  10/19/2026
  * (#)Compound.java 0.8.0   02/03/2024
  *
  * @author    Jonathan Parker
- * @version   0.8.0
+ * @version   0.10.0
  * @since     0.8.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -31,15 +32,17 @@ package net.jmp.demo.mongodb.atlas.async;
  */
 
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
 
 import com.mongodb.client.model.*;
 
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 
 import com.mongodb.client.result.UpdateResult;
 import com.mongodb.reactivestreams.client.MongoClient;
 
+import java.time.Duration;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -57,13 +60,17 @@ final class Compound {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final ChunkedDelete chunkedDelete;
+    private final ClaimEngine claimEngine;
+
+    /* Prints the documents returned by the find-and-modify writes */
 
     class DocumentPrinter extends ConsumerSubscriber<Document> {
-        DocumentPrinter(final String methodName) {
+        DocumentPrinter(final String methodName, final MongoNamespace namespace) {
             super(document -> {
                 if (logger.isInfoEnabled())
                     logger.info("{}: {}", methodName, document.toJson());
-            });
+            }, namespace);
         }
     }
 
@@ -74,6 +81,16 @@ final class Compound {
 
         this.dbName = properties.getProperty("mongodb.compound.db", "training");
         this.collectionName = properties.getProperty("mongodb.compound.collection", "food");
+
+        this.chunkedDelete = new ChunkedDelete(properties, mongoClient, this.dbName, this.collectionName);
+
+        final var leaseSeconds = Long.parseLong(properties.getProperty("mongodb.compound.leaseSeconds", "300"));
+
+        this.claimEngine = new ClaimEngine(mongoClient,
+                this.dbName,
+                this.collectionName,
+                "guest",
+                Duration.ofSeconds(leaseSeconds));
     }
 
     void run() {
@@ -114,7 +131,9 @@ final class Compound {
 
         jsonDocuments.forEach(jsonDocument -> documents.add(Document.parse(jsonDocument)));
 
-        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
 
         collection.insertMany(documents).subscribe(subscriber);
 
@@ -154,7 +173,9 @@ final class Compound {
 
         // The found document is in the state AFTER the update
 
-        final var subscriber = new DocumentPrinter("findAndUpdate");
+        final var subscriber = new DocumentPrinter("findAndUpdate", collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
 
         collection
                 .findOneAndUpdate(filter, update, options)
@@ -185,7 +206,9 @@ final class Compound {
 
         // The found document is in the state AFTER the update
 
-        final var subscriber = new DocumentPrinter("findAndReplace");
+        final var subscriber = new DocumentPrinter("findAndReplace", collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndReplace", filter, 0);
 
         collection.findOneAndReplace(filter, newDocument, options)
                 .subscribe(subscriber);
@@ -209,7 +232,9 @@ final class Compound {
 
         // The deleted document is returned
 
-        final var subscriber = new DocumentPrinter("findAndDelete");
+        final var subscriber = new DocumentPrinter("findAndDelete", collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndDelete", filter, 0);
 
         collection.findOneAndDelete(filter, options)
                 .subscribe(subscriber);
@@ -243,7 +268,9 @@ final class Compound {
         final var filter = Filters.eq("_id", 3);
         final var update = Updates.combine(Updates.set("reserved", false), Updates.set("guest", null));
 
-        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
 
         collection.updateOne(filter, update).subscribe(subscriber);
 
@@ -264,6 +291,8 @@ final class Compound {
                 () -> this.bookRoomWithoutRaceCondition("Laura")
         );
 
+        this.claimEngine.logMetrics();
+
         this.logger.exit();
     }
 
@@ -295,6 +324,8 @@ final class Compound {
 
         final ObservableSubscriber<Document> findSubscriber = new OperationSubscriber<>();
 
+        findSubscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
         collection.find(filter).first().subscribe(findSubscriber);
 
         findSubscriber.await();
@@ -309,7 +340,9 @@ final class Compound {
             final var update = Updates.combine(Updates.set("reserved", true), Updates.set("guest", name));
             final var roomFilter = Filters.eq("_id", room.get("_id", Integer.class));
 
-            final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>();
+            final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            updateSubscriber.recording(collection.getNamespace(), "updateOne", roomFilter, 0);
 
             collection.updateOne(roomFilter, update).subscribe(updateSubscriber);
 
@@ -322,20 +355,9 @@ final class Compound {
     private void bookRoomWithoutRaceCondition(final String name) {
         this.logger.entry(name);
 
-        final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
-        final var filter = Filters.eq("reserved", false);
-        final var update = Updates.combine(Updates.set("reserved", true), Updates.set("guest", name));
-
-        final ObservableSubscriber<Document> findSubscriber = new OperationSubscriber<>();
-
-        collection.findOneAndUpdate(filter, update).subscribe(findSubscriber);
-
-        findSubscriber.await();
-
-        final var room = findSubscriber.first();
+        final var room = this.claimEngine.claim(name);
 
-        if (room == null) {
+        if (room.isEmpty()) {
             this.logger.warn("Sorry, {}, a room is not available", name);
         } else {
             this.logger.info("Congratulations, {}, a room is available", name);
@@ -347,21 +369,7 @@ final class Compound {
     private void deleteData() {
         this.logger.entry();
 
-        final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
-        final var filter = Filters.empty();
-
-        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>();
-
-        collection.deleteMany(filter).subscribe(subscriber);
-
-        subscriber.await();
-
-        if (subscriber.getError() == null) {
-            this.logger.info("{} document(s) were deleted", subscriber.first().getDeletedCount());
-        } else {
-            this.logger.error(subscriber.getError().getMessage());
-        }
+        this.chunkedDelete.deleteAll();
 
         this.logger.exit();
     }
@@ -1,6 +1,7 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)ConsumerSubscriber.java   0.10.0  10/19/2026
  * (#)ConsumerSubscriber.java   0.1.0   12/19/2023
  *
  * For the purposes of learning and developing this
@@ -11,13 +12,13 @@ package net.jmp.demo.mongodb.atlas.async;
  * https://github.com/mongodb/mongo-java-driver/blob/master/driver-reactive-streams/src/examples/reactivestreams/helpers/SubscriberHelpers.java
  *
  * @author    Jonathan Parker
- * @version   0.1.0
+ * @version   0.10.0
  * @since     0.1.0
  *
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -38,6 +39,8 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.MongoNamespace;
+
 import java.util.function.Consumer;
 
 class ConsumerSubscriber<T> extends ObservableSubscriber<T> {
@@ -49,6 +52,12 @@ class ConsumerSubscriber<T> extends ObservableSubscriber<T> {
         this.consumer = consumer;
     }
 
+    ConsumerSubscriber(final Consumer<T> consumer, final MongoNamespace written) {
+        super(written);
+
+        this.consumer = consumer;
+    }
+
     void setConsumer(final Consumer<T> consumer) {
         this.consumer = consumer;
     }
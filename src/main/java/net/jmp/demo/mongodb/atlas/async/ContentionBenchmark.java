@@ -0,0 +1,470 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ContentionBenchmark.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Measures how the room booking patterns in Compound scale under
+ * contention. Each of N virtual-thread clients books one room out of
+ * a pool of M rooms using one of three patterns:
+ *
+ * RACE     find a free room, then update it unconditionally
+ * CHECKED  find a free room, then update it only if it is still free,
+ *          retrying on a lost race
+ * ATOMIC   a single findOneAndUpdate on reserved == false
+ *
+ * The pool is either the MongoDB collection or an in-process stand-in
+ * that has the same semantics without the network. Run it with
+ * admission control disabled, its default; otherwise the MongoDB
+ * throughput measured is that of the admission budgets.
+ */
+final class ContentionBenchmark {
+    enum Mode {
+        RACE,
+        CHECKED,
+        ATOMIC
+    }
+
+    interface RoomPool {
+        String getName();
+
+        void reset(int rooms);
+
+        Object findAvailable();
+
+        boolean reserve(Object id, String guest, boolean onlyIfAvailable);
+
+        Object reserveAny(String guest);
+
+        void clear();
+    }
+
+    record Result(String pool,
+                  Mode mode,
+                  int clients,
+                  int rooms,
+                  long booked,
+                  long doubleBookings,
+                  long retries,
+                  long failed,
+                  double throughput,
+                  double p99Millis) {
+        double retryRate() {
+            final var completed = this.clients - this.failed;
+
+            return completed == 0 ? 0 : (double) this.retries / completed;
+        }
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final boolean enabled;
+    private final int rooms;
+    private final List<Integer> clientCounts;
+
+    ContentionBenchmark(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.dbName = properties.getProperty("mongodb.benchmark.db", "training");
+        this.collectionName = properties.getProperty("mongodb.benchmark.collection", "rooms");
+        this.enabled = Boolean.parseBoolean(properties.getProperty("mongodb.benchmark.enabled", "false"));
+        this.rooms = Integer.parseInt(properties.getProperty("mongodb.benchmark.rooms", "100"));
+        this.clientCounts = Arrays.stream(properties.getProperty("mongodb.benchmark.clients", "2,10,100,1000,10000").split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .toList();
+    }
+
+    void run() {
+        this.logger.entry();
+
+        if (this.enabled) {
+            this.logger.info("Beginning contention benchmark...");
+
+            if (AdmissionControl.getInstance().isEnabled())
+                this.logger.warn("Admission control is enabled; the MongoDB results are capped by its budgets");
+
+            final List<RoomPool> pools = List.of(new LocalRoomPool(), new MongoRoomPool());
+
+            for (final var pool : pools) {
+                try {
+                    for (final var mode : Mode.values()) {
+                        for (final var clients : this.clientCounts)
+                            this.report(this.measure(pool, mode, clients, this.rooms));
+                    }
+                } finally {
+                    pool.clear();
+                }
+            }
+
+            this.logger.info("Ending contention benchmark...");
+        } else {
+            this.logger.info("Contention benchmark is disabled");
+        }
+
+        this.logger.exit();
+    }
+
+    Result measure(final RoomPool pool, final Mode mode, final int clients, final int roomCount) {
+        this.logger.entry(pool, mode, clients, roomCount);
+
+        pool.reset(roomCount);
+
+        final Map<Object, LongAdder> bookings = new ConcurrentHashMap<>();
+        final var retries = new LongAdder();
+        final var latencies = new long[clients];
+        final var next = new AtomicInteger();
+        final var ready = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>(clients);
+
+        final long start;
+        final long elapsed;
+
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                final var guest = "guest-" + i;
+
+                futures.add(executor.submit(() -> {
+                    ready.await();
+
+                    final var began = System.nanoTime();
+                    final var room = this.book(pool, mode, guest, retries);
+
+                    latencies[next.getAndIncrement()] = System.nanoTime() - began;
+
+                    if (room != null)
+                        bookings.computeIfAbsent(room, k -> new LongAdder()).increment();
+
+                    return null;
+                }));
+            }
+
+            start = System.nanoTime();
+
+            ready.countDown();
+        }
+
+        elapsed = System.nanoTime() - start;
+
+        final var failed = this.failures(futures);
+
+        long booked = 0;
+        long doubleBookings = 0;
+
+        for (final var count : bookings.values()) {
+            final var guests = count.sum();
+
+            booked += guests;
+            doubleBookings += Math.max(0, guests - 1);
+        }
+
+        Arrays.sort(latencies, 0, next.get());
+
+        final var p99 = next.get() == 0 ? 0 : latencies[Math.min(next.get() - 1, (int) Math.ceil(next.get() * 0.99) - 1)];
+
+        final var result = new Result(pool.getName(),
+                mode,
+                clients,
+                roomCount,
+                booked,
+                doubleBookings,
+                retries.sum(),
+                failed,
+                (clients - failed) / (elapsed / 1_000_000_000.0),
+                p99 / 1_000_000.0);
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private Object book(final RoomPool pool, final Mode mode, final String guest, final LongAdder retries) {
+        return switch (mode) {
+            case ATOMIC -> pool.reserveAny(guest);
+            case RACE -> {
+                final var room = pool.findAvailable();
+
+                yield room != null && pool.reserve(room, guest, false) ? room : null;
+            }
+            case CHECKED -> {
+                Object room;
+
+                while ((room = pool.findAvailable()) != null) {
+                    if (pool.reserve(room, guest, true))
+                        break;
+
+                    retries.increment();
+                }
+
+                yield room;
+            }
+        };
+    }
+
+    /**
+     * Count the clients whose task failed, logging
+     * the first failure. The executor has been closed
+     * so every future is done.
+     *
+     * @param   futures java.util.List&lt;java.util.concurrent.Future&lt;?&gt;&gt;
+     * @return          long
+     */
+    private long failures(final List<Future<?>> futures) {
+        long failed = 0;
+
+        for (final var future : futures) {
+            if (future.state() == Future.State.FAILED) {
+                if (failed++ == 0)
+                    this.logger.error("Client failed: {}", future.exceptionNow().getMessage(), future.exceptionNow());
+            } else if (future.state() == Future.State.CANCELLED) {
+                failed++;
+            }
+        }
+
+        if (failed > 0)
+            this.logger.warn("{} of {} clients failed", failed, futures.size());
+
+        return failed;
+    }
+
+    private void report(final Result result) {
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("{} {} clients={} rooms={}: {} ops/s, p99 {} ms, booked {}, double-booked {}, retry rate {}, failed {}",
+                    result.pool(),
+                    result.mode(),
+                    result.clients(),
+                    result.rooms(),
+                    String.format("%.1f", result.throughput()),
+                    String.format("%.3f", result.p99Millis()),
+                    result.booked(),
+                    result.doubleBookings(),
+                    String.format("%.3f", result.retryRate()),
+                    result.failed());
+        }
+    }
+
+    /**
+     * The in-process stand-in. A yield between finding and reserving a
+     * room stands in for the round trip that opens the race window.
+     */
+    static final class LocalRoomPool implements RoomPool {
+        private final ReentrantLock lock = new ReentrantLock();
+        private AtomicReferenceArray<String> guests = new AtomicReferenceArray<>(0);
+
+        @Override
+        public String getName() {
+            return "local";
+        }
+
+        @Override
+        public void reset(final int rooms) {
+            this.guests = new AtomicReferenceArray<>(rooms);
+        }
+
+        @Override
+        public Object findAvailable() {
+            for (int i = 0; i < this.guests.length(); i++) {
+                if (this.guests.get(i) == null)
+                    return i;
+            }
+
+            return null;
+        }
+
+        @Override
+        public boolean reserve(final Object id, final String guest, final boolean onlyIfAvailable) {
+            final var index = (Integer) id;
+
+            Thread.yield();
+
+            if (onlyIfAvailable)
+                return this.guests.compareAndSet(index, null, guest);
+
+            this.guests.set(index, guest);
+
+            return true;
+        }
+
+        @Override
+        public Object reserveAny(final String guest) {
+            // The server applies findOneAndUpdate atomically
+
+            this.lock.lock();
+
+            try {
+                final var room = this.findAvailable();
+
+                if (room != null)
+                    this.guests.set((Integer) room, guest);
+
+                return room;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public void clear() {
+            this.guests = new AtomicReferenceArray<>(0);
+        }
+    }
+
+    final class MongoRoomPool implements RoomPool {
+        @Override
+        public String getName() {
+            return "mongodb";
+        }
+
+        @Override
+        public void reset(final int rooms) {
+            final var collection = mongoClient.getDatabase(dbName).getCollection(collectionName);
+
+            final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            deleteSubscriber.recording(collection.getNamespace(), "deleteMany", null, 0);
+
+            collection.deleteMany(Filters.empty()).subscribe(deleteSubscriber);
+
+            deleteSubscriber.await();
+
+            final List<Document> documents = new ArrayList<>(rooms);
+
+            for (int i = 1; i <= rooms; i++)
+                documents.add(new Document("_id", i).append("room", "Room " + i).append("reserved", false).append("guest", null));
+
+            final ObservableSubscriber<InsertManyResult> insertSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            insertSubscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
+
+            collection.insertMany(documents).subscribe(insertSubscriber);
+
+            insertSubscriber.await();
+        }
+
+        @Override
+        public Object findAvailable() {
+            final var collection = mongoClient.getDatabase(dbName).getCollection(collectionName);
+
+            final var filter = Filters.eq("reserved", false);
+            final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+            subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+            collection.find(filter).first().subscribe(subscriber);
+
+            final var room = subscriber.first();
+
+            return room != null ? room.get("_id") : null;
+        }
+
+        @Override
+        public boolean reserve(final Object id, final String guest, final boolean onlyIfAvailable) {
+            final var collection = mongoClient.getDatabase(dbName).getCollection(collectionName);
+
+            final Bson filter = onlyIfAvailable
+                    ? Filters.and(Filters.eq("_id", id), Filters.eq("reserved", false))
+                    : Filters.eq("_id", id);
+
+            final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
+
+            collection.updateOne(filter, this.reservation(guest)).subscribe(subscriber);
+
+            return subscriber.first().getMatchedCount() == 1;
+        }
+
+        @Override
+        public Object reserveAny(final String guest) {
+            final var collection = mongoClient.getDatabase(dbName).getCollection(collectionName);
+
+            final var filter = Filters.eq("reserved", false);
+            final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
+
+            collection.findOneAndUpdate(filter, this.reservation(guest)).subscribe(subscriber);
+
+            final var room = subscriber.first();
+
+            return room != null ? room.get("_id") : null;
+        }
+
+        @Override
+        public void clear() {
+            final var collections = new Collections(mongoClient);
+
+            collections.dropCollection(dbName, collectionName);
+        }
+
+        private Bson reservation(final String guest) {
+            return Updates.combine(Updates.set("reserved", true), Updates.set("guest", guest));
+        }
+    }
+}
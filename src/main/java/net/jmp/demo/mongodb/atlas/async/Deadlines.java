@@ -0,0 +1,108 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)Deadlines.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.time.Duration;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * How long each kind of operation may take, from the mongodb.deadline
+ * properties. A subscriber's deadline runs from when it subscribes, so
+ * waiting for admission and waiting for the result share it; once it
+ * passes the subscription is cancelled and the operation fails. Reads
+ * and aggregations, including those that $merge, also send it to the
+ * server as maxTimeMS so that the server stops working on them at the
+ * same time. Writes get the WRITE deadline unless given another, and
+ * everything else DEFAULT.
+ */
+final class Deadlines {
+    /**
+     * The kinds of operation that have deadlines of their own.
+     */
+    enum Operation {
+        LOOKUP(5_000),
+        QUERY(30_000),
+        AGGREGATE(60_000),
+        WRITE(10_000),
+        BULK(60_000),
+        DEFAULT(60_000);
+
+        private final long defaultMillis;
+
+        Operation(final long defaultMillis) {
+            this.defaultMillis = defaultMillis;
+        }
+
+        private String key() {
+            return "mongodb.deadline." + this.name().toLowerCase(Locale.ROOT) + "Millis";
+        }
+    }
+
+    private static volatile Deadlines instance = new Deadlines(new Properties());
+
+    private final Map<Operation, Duration> deadlines = new EnumMap<>(Operation.class);
+
+    Deadlines(final Properties properties) {
+        super();
+
+        for (final var operation : Operation.values()) {
+            final var millis = Long.parseLong(properties.getProperty(operation.key(), String.valueOf(operation.defaultMillis)));
+
+            if (millis <= 0)
+                throw new IllegalArgumentException("The deadline for " + operation + " must be positive: " + millis);
+
+            this.deadlines.put(operation, Duration.ofMillis(millis));
+        }
+    }
+
+    /**
+     * Replace the process-wide deadlines with ones configured from the
+     * mongodb.deadline properties.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        instance = new Deadlines(properties);
+    }
+
+    static Deadlines getInstance() {
+        return instance;
+    }
+
+    Duration of(final Operation operation) {
+        return this.deadlines.get(operation);
+    }
+}
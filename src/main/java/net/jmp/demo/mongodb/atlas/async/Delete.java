@@ -1,16 +1,17 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Delete.java   0.10.0  10/19/2026
  * (#)Delete.java   0.7.0   01/09/2024
  * (#)Delete.java   0.4.0   01/02/2024
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.4.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -50,6 +51,7 @@ final class Delete {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final ChunkedDelete chunkedDelete;
 
     Delete(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -58,6 +60,8 @@ final class Delete {
 
         this.dbName = properties.getProperty("mongodb.delete.db", "training");
         this.collectionName = properties.getProperty("mongodb.delete.collection", "colors");
+
+        this.chunkedDelete = new ChunkedDelete(properties, mongoClient, this.dbName, this.collectionName);
     }
 
     void run() {
@@ -80,7 +84,9 @@ final class Delete {
         final var collection = database.getCollection(this.collectionName);
         final var filter = Filters.eq("color", "red");
 
-        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        deleteSubscriber.recording(collection.getNamespace(), "deleteOne", filter, 0);
 
         collection.deleteOne(filter).subscribe(deleteSubscriber);
 
@@ -101,7 +107,9 @@ final class Delete {
         final var collection = database.getCollection(this.collectionName);
         final var filter = Filters.eq("color", "orange");
 
-        final ObservableSubscriber<Document> deleteSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        deleteSubscriber.recording(collection.getNamespace(), "findOneAndDelete", filter, 0);
 
         collection.findOneAndDelete(filter).subscribe(deleteSubscriber);
 
@@ -130,7 +138,9 @@ final class Delete {
         final var collection = database.getCollection(this.collectionName);
         final var filter = Filters.eq("qty", 15);
 
-        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        deleteSubscriber.recording(collection.getNamespace(), "deleteMany", filter, 0);
 
         collection.deleteMany(filter).subscribe(deleteSubscriber);
 
@@ -147,21 +157,7 @@ final class Delete {
     private void deleteAllDocuments() {
         this.logger.entry();
 
-        final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
-
-        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>();
-
-        // An empty document as a filter will delete all documents
-
-        collection.deleteMany(new Document()).subscribe(deleteSubscriber);
-
-        deleteSubscriber.await();
-
-        if (deleteSubscriber.getError() == null)
-            this.logger.info("{} document(s) were deleted", deleteSubscriber.first().getDeletedCount());
-        else
-            this.logger.error(deleteSubscriber.getError().getMessage());
+        this.chunkedDelete.deleteAll();
 
         this.logger.exit();
     }
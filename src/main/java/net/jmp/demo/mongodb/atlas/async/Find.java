@@ -1,18 +1,19 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Find.java 0.10.0  10/19/2026
  * (#)Find.java 0.7.0   01/09/2024
  * (#)Find.java 0.3.0   12/22/2023
  * (#)Find.java 0.2.0   12/20/2023
  * (#)Find.java 0.1.0   12/16/2023
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.1.0
  *
  * MIT License
  *
- * Copyright (c) 2023, 2024 Jonathan M. Parker
+ * Copyright (c) 2023, 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -33,13 +34,22 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.ReadPreference;
+
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 
+import java.time.Duration;
+
+import java.util.Arrays;
 import java.util.Properties;
 
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
 import org.slf4j.LoggerFactory;
 
 import org.slf4j.ext.XLogger;
@@ -52,6 +62,7 @@ final class Find {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final int hedgeDemoLookups;
 
     Find(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -60,6 +71,7 @@ final class Find {
 
         this.dbName = properties.getProperty("mongodb.find.db", "sample_mflix");
         this.collectionName = properties.getProperty("mongodb.find.collection", "movies");
+        this.hedgeDemoLookups = Integer.parseInt(properties.getProperty("mongodb.hedge.demoLookups", "0"));
     }
 
     void run() {
@@ -70,9 +82,12 @@ final class Find {
 
         if (collections.existsCollection(this.dbName, this.collectionName)) {
             this.findOneDocument();
+            this.findOneDocument();     // Served from the near cache
             this.findMultipleDocuments();
         }
 
+        this.hedgedLookups();
+
         this.logger.info("Ending find operations.");
         this.logger.exit();
     }
@@ -81,24 +96,23 @@ final class Find {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("find", database.getCollection(this.collectionName));
 
         final var projectionFields = Projections.fields(
                 Projections.include("title", "imdb"),
                 Projections.excludeId());
 
-        final var documentSubscriber = new PrintDocumentSubscriber(this.logger);
-
-        collection.find(eq("title", "The Room"))
-            .projection(projectionFields)
-            .sort(Sorts.descending("imdb.rating"))
-            .first()
-            .subscribe(documentSubscriber);
-
-        documentSubscriber.await();
+        try {
+            final var document = NearCache.getInstance().findFirst(collection,
+                    eq("title", "The Room"),
+                    projectionFields,
+                    Sorts.descending("imdb.rating"));
 
-        if (documentSubscriber.getError() != null)
-            this.logger.error(documentSubscriber.getError().getMessage());
+            if (document != null)
+                this.logger.info(document.toJson());
+        } catch (final RuntimeException re) {
+            this.logger.error(re.getMessage());
+        }
 
         this.logger.exit();
     }
@@ -107,16 +121,23 @@ final class Find {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("find", database.getCollection(this.collectionName));
 
         final var projectionFields = Projections.fields(
                 Projections.include("title", "runtime", "imdb"),
                 Projections.excludeId());
 
+        final var filter = lt("runtime", 15);
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var documentSubscriber = new PrintDocumentSubscriber(this.logger);
 
+        documentSubscriber.recording(collection.getNamespace(), "find", filter, 0);
+        documentSubscriber.routed("find");
+        documentSubscriber.deadline(deadline);
+
         collection
-            .find(lt("runtime", 15))
+            .find(filter)
+            .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
             .projection(projectionFields)
             .sort(Sorts.descending("title"))
             .subscribe(documentSubscriber);
@@ -133,4 +154,63 @@ final class Find {
 
         this.logger.exit();
     }
+
+    /*
+     * Compare plain and hedged lookups against the local stand-in,
+     * where one lookup in twenty is forty times slower than the rest
+     */
+    private void hedgedLookups() {
+        this.logger.entry();
+
+        if (this.hedgeDemoLookups > 0) {
+            final var lookup = new HedgedReader.LocalLookup(new Document("title", "The Room"),
+                    Duration.ofMillis(5),
+                    Duration.ofMillis(200),
+                    0.05);
+
+            // The configured settings, with latencies kept apart from the live reader's
+
+            final var reader = HedgedReader.getInstance().copy();
+
+            final var deadline = Deadlines.getInstance().of(Deadlines.Operation.LOOKUP);
+            final var plain = new long[this.hedgeDemoLookups];
+            final var hedged = new long[this.hedgeDemoLookups];
+
+            for (int i = 0; i < this.hedgeDemoLookups; i++) {
+                var start = System.nanoTime();
+
+                final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+                lookup.first(ReadPreference.primary()).subscribe(subscriber);
+                subscriber.first();
+
+                plain[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+
+                reader.first(lookup, deadline);
+
+                hedged[i] = System.nanoTime() - start;
+            }
+
+            this.logLatencies("Plain", plain);
+            this.logLatencies("Hedged", hedged);
+
+            reader.logMetrics();
+        }
+
+        this.logger.exit();
+    }
+
+    private void logLatencies(final String label, final long[] latencies) {
+        Arrays.sort(latencies);
+
+        if (this.logger.isInfoEnabled())
+            this.logger.info("{} lookups: p50 {} ms, p95 {} ms, p99 {} ms, max {} ms",
+                    label,
+                    TimeUnit.NANOSECONDS.toMillis(latencies[latencies.length / 2]),
+                    TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(latencies.length * 0.95) - 1]),
+                    TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(latencies.length * 0.99) - 1]),
+                    TimeUnit.NANOSECONDS.toMillis(latencies[latencies.length - 1]));
+    }
 }
@@ -0,0 +1,520 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)HedgedReader.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.ReadPreference;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.time.Duration;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Hedged reads for single-document lookups. The lookup is sent with
+ * the primary read preference; if it has not answered by the time the
+ * recent primary latencies put at the configured percentile, the same
+ * lookup is sent again with the hedge read preference. Whichever
+ * answers first wins and the other is cancelled. With the 95th
+ * percentile about one lookup in twenty is hedged, in return for
+ * cutting off the slow tail caused by one slow member or a network
+ * hiccup.
+ *
+ * Only reads that are safe to send twice should be hedged, and the
+ * hedge may be served by a secondary that lags the primary; answer()
+ * says which request won so that a caller can avoid keeping what may
+ * be a stale answer.
+ *
+ * Both requests are charged to the READ admission budget. The primary
+ * request waits for admission on the caller's thread; the hedge is
+ * sent from a shared timer thread that must not block, so it is not
+ * sent at all unless it can be admitted at once.
+ */
+final class HedgedReader {
+    /**
+     * One lookup that can be issued with a given read preference.
+     */
+    @FunctionalInterface
+    interface Lookup {
+        Publisher<Document> first(ReadPreference readPreference);
+    }
+
+    /**
+     * The document a lookup found, or null, and whether the hedge
+     * rather than the primary request found it.
+     */
+    record Answer(Document document, boolean hedged) {
+    }
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+            .name("hedged-reads")
+            .daemon()
+            .factory());
+
+    private static volatile HedgedReader instance = new HedgedReader(false,
+            ReadPreference.primary(),
+            ReadPreference.secondaryPreferred(),
+            95,
+            1000,
+            Duration.ofMillis(50),
+            Duration.ofMillis(5));
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final boolean enabled;
+    private final ReadPreference readPreference;
+    private final ReadPreference hedgeReadPreference;
+    private final int percentile;
+    private final long[] latencies;
+    private final long minDelayNanos;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder hedgesShed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private long samples;
+    private volatile long delayNanos;
+
+    HedgedReader(final boolean enabled,
+                 final ReadPreference readPreference,
+                 final ReadPreference hedgeReadPreference,
+                 final int percentile,
+                 final int window,
+                 final Duration initialDelay,
+                 final Duration minDelay) {
+        super();
+
+        if (percentile <= 0 || percentile >= 100)
+            throw new IllegalArgumentException("The percentile must be between 1 and 99: " + percentile);
+
+        if (window <= 0)
+            throw new IllegalArgumentException("The window must be positive: " + window);
+
+        this.enabled = enabled;
+        this.readPreference = readPreference;
+        this.hedgeReadPreference = hedgeReadPreference;
+        this.percentile = percentile;
+        this.latencies = new long[window];
+        this.minDelayNanos = minDelay.toNanos();
+        this.delayNanos = Math.max(initialDelay.toNanos(), this.minDelayNanos);
+    }
+
+    /**
+     * Replace the process-wide reader with one configured from the
+     * mongodb.hedge properties.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        instance = new HedgedReader(Boolean.parseBoolean(properties.getProperty("mongodb.hedge.enabled", "false")),
+                ReadPreference.valueOf(properties.getProperty("mongodb.hedge.readPreference", "primary")),
+                ReadPreference.valueOf(properties.getProperty("mongodb.hedge.hedgeReadPreference", "secondaryPreferred")),
+                Integer.parseInt(properties.getProperty("mongodb.hedge.percentile", "95")),
+                Integer.parseInt(properties.getProperty("mongodb.hedge.window", "1000")),
+                Duration.ofMillis(Long.parseLong(properties.getProperty("mongodb.hedge.initialDelayMillis", "50"))),
+                Duration.ofMillis(Long.parseLong(properties.getProperty("mongodb.hedge.minDelayMillis", "5"))));
+    }
+
+    static HedgedReader getInstance() {
+        return instance;
+    }
+
+    /**
+     * A reader with the same settings as this one that keeps its own
+     * latencies and metrics.
+     *
+     * @return  The reader
+     */
+    HedgedReader copy() {
+        return new HedgedReader(this.enabled,
+                this.readPreference,
+                this.hedgeReadPreference,
+                this.percentile,
+                this.latencies.length,
+                this.getDelay(),
+                Duration.ofNanos(this.minDelayNanos));
+    }
+
+    /**
+     * A find(...).first() on a collection.
+     *
+     * @param   collection  The collection
+     * @param   filter      The filter
+     * @param   projection  The projection, or null
+     * @param   sort        The sort, or null
+     * @param   deadline    Sent as maxTimeMS
+     * @return              The lookup
+     */
+    static Lookup forFind(final MongoCollection<Document> collection,
+                          final Bson filter,
+                          final Bson projection,
+                          final Bson sort,
+                          final Duration deadline) {
+        return readPreference -> collection.withReadPreference(readPreference)
+                .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .projection(projection)
+                .sort(sort)
+                .first();
+    }
+
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * The delay after which a lookup is hedged, from recent latencies.
+     *
+     * @return  The delay
+     */
+    Duration getDelay() {
+        return Duration.ofNanos(this.delayNanos);
+    }
+
+    /**
+     * Run the lookup, hedging it if it is slow.
+     *
+     * @param   lookup      The lookup
+     * @param   deadline    How long to wait for either answer
+     * @return              The document, or null if none matched
+     */
+    Document first(final Lookup lookup, final Duration deadline) {
+        return this.answer(lookup, deadline).document();
+    }
+
+    /**
+     * Run the lookup, hedging it if it is slow, and say which request
+     * answered.
+     *
+     * @param   lookup      The lookup
+     * @param   deadline    How long to wait for either answer
+     * @return              The answer
+     */
+    Answer answer(final Lookup lookup, final Duration deadline) {
+        Trace.entry(this.logger, lookup, deadline);
+
+        this.requests.increment();
+
+        final var deadlineNanos = System.nanoTime() + deadline.toNanos();
+        final var admission = AdmissionControl.getInstance();
+        final AdmissionControl.Permit permit;
+
+        try {
+            permit = admission.acquire(AdmissionControl.Budget.READ, deadlineNanos);
+        } catch (final MongoTimeoutException mte) {
+            this.failures.increment();
+
+            throw mte;
+        }
+
+        final var result = new CompletableFuture<Answer>();
+        final var outstanding = new AtomicInteger(1);
+        final var start = System.nanoTime();
+
+        final var primary = new Attempt(result, outstanding, start, false);
+
+        primary.admitted(permit);
+
+        lookup.first(this.readPreference).subscribe(primary);
+
+        final var hedge = new Attempt(result, outstanding, start, true);
+
+        final var timer = SCHEDULER.schedule(() -> {
+            if (result.isDone())
+                return;
+
+            final var hedgePermit = admission.isEnabled() ? admission.tryAcquire(AdmissionControl.Budget.READ) : null;
+
+            if (admission.isEnabled() && hedgePermit == null) {
+                this.hedgesShed.increment();
+            } else if (outstanding.incrementAndGet() > 1) {
+                this.hedges.increment();
+
+                hedge.admitted(hedgePermit);
+
+                lookup.first(this.hedgeReadPreference).subscribe(hedge);
+            } else if (hedgePermit != null) {
+                hedgePermit.release(false);
+            }
+        }, this.delayNanos, TimeUnit.NANOSECONDS);
+
+        try {
+            final var answer = result.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+            if (answer.hedged())
+                this.hedgeWins.increment();
+
+            return Trace.exit(this.logger, answer);
+        } catch (final TimeoutException te) {
+            this.failures.increment();
+
+            throw new MongoTimeoutException("Hedged lookup timed out after " + deadline.toMillis() + " ms");
+        } catch (final ExecutionException ee) {
+            this.failures.increment();
+
+            throw ee.getCause() instanceof RuntimeException re ? re : new RuntimeException(ee.getCause());
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new RuntimeException("Interrupted waiting for a hedged lookup", ie);
+        } finally {
+            // Whichever attempt is still running lost
+
+            timer.cancel(false);
+            primary.cancel();
+            hedge.cancel();
+
+            this.record(primary.elapsedNanos(System.nanoTime()));
+        }
+    }
+
+    long getRequests() {
+        return this.requests.sum();
+    }
+
+    long getHedges() {
+        return this.hedges.sum();
+    }
+
+    long getHedgeWins() {
+        return this.hedgeWins.sum();
+    }
+
+    long getHedgesShed() {
+        return this.hedgesShed.sum();
+    }
+
+    void logMetrics() {
+        final var total = this.requests.sum();
+
+        if (this.logger.isInfoEnabled() && total > 0)
+            this.logger.info("Hedged reads: {} lookups, {} hedged ({}%), {} won by the hedge, {} not admitted, {} failed; hedging after {} ms",
+                    total,
+                    this.hedges.sum(),
+                    String.format("%.1f", 100.0 * this.hedges.sum() / total),
+                    this.hedgeWins.sum(),
+                    this.hedgesShed.sum(),
+                    this.failures.sum(),
+                    String.format("%.1f", this.delayNanos / 1e6));
+    }
+
+    /*
+     * Keep a sliding window of primary latencies and recompute the
+     * hedge delay from it every so often. A primary that was cancelled
+     * records how long it had run, which understates its latency.
+     */
+    private synchronized void record(final long nanos) {
+        this.latencies[(int) (this.samples++ % this.latencies.length)] = nanos;
+
+        final var filled = (int) Math.min(this.samples, this.latencies.length);
+
+        if (this.samples % 32 == 0 && filled >= 20) {
+            final var sorted = Arrays.copyOf(this.latencies, filled);
+
+            Arrays.sort(sorted);
+
+            this.delayNanos = Math.max(this.minDelayNanos, sorted[(int) Math.ceil(filled * this.percentile / 100.0) - 1]);
+        }
+    }
+
+    /*
+     * One of the two requests; the first to answer completes the result.
+     * Its admission permit, if any, is released once it finishes or is
+     * cancelled, whichever comes first.
+     */
+    private final class Attempt implements Subscriber<Document> {
+        private final CompletableFuture<Answer> result;
+        private final AtomicInteger outstanding;
+        private final long start;
+        private final boolean hedge;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Subscription subscription;
+        private volatile AdmissionControl.Permit permit;
+        private volatile long finished;
+        private Document document;
+
+        private Attempt(final CompletableFuture<Answer> result,
+                        final AtomicInteger outstanding,
+                        final long start,
+                        final boolean hedge) {
+            super();
+
+            this.result = result;
+            this.outstanding = outstanding;
+            this.start = start;
+            this.hedge = hedge;
+        }
+
+        private void admitted(final AdmissionControl.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            this.subscription = s;
+
+            if (this.cancelled.get()) {
+                s.cancel();
+
+                this.release(false);
+            } else {
+                s.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(final Document next) {
+            this.document = next;
+
+            if (this.permit != null)
+                this.permit.signal();
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            this.finished = System.nanoTime();
+
+            this.release(true);
+
+            // Fail only once no other attempt can still answer
+
+            if (this.outstanding.decrementAndGet() == 0)
+                this.result.completeExceptionally(t);
+        }
+
+        @Override
+        public void onComplete() {
+            this.finished = System.nanoTime();
+
+            if (this.permit != null)
+                this.permit.signal();
+
+            this.release(false);
+
+            this.result.complete(new Answer(this.document, this.hedge));
+        }
+
+        private void cancel() {
+            if (this.cancelled.compareAndSet(false, true) && this.subscription != null)
+                this.subscription.cancel();
+
+            this.release(false);
+        }
+
+        private void release(final boolean failed) {
+            final var admitted = this.permit;
+
+            if (admitted != null)
+                admitted.release(failed);
+        }
+
+        private long elapsedNanos(final long now) {
+            return (this.finished != 0 ? this.finished : now) - this.start;
+        }
+    }
+
+    /**
+     * A stand-in for a replica set that answers lookups from memory
+     * after an injected latency, usually fast and occasionally slow,
+     * drawn independently for every request.
+     */
+    static final class LocalLookup implements Lookup {
+        private final Document document;
+        private final Duration latency;
+        private final Duration slowLatency;
+        private final double slowProbability;
+
+        LocalLookup(final Document document,
+                    final Duration latency,
+                    final Duration slowLatency,
+                    final double slowProbability) {
+            super();
+
+            this.document = document;
+            this.latency = latency;
+            this.slowLatency = slowLatency;
+            this.slowProbability = slowProbability;
+        }
+
+        @Override
+        public Publisher<Document> first(final ReadPreference readPreference) {
+            return subscriber -> {
+                final var cancelled = new AtomicBoolean();
+
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(final long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                        cancelled.set(true);
+                    }
+                });
+
+                final var delay = ThreadLocalRandom.current().nextDouble() < this.slowProbability ? this.slowLatency : this.latency;
+
+                SCHEDULER.schedule(() -> {
+                    if (!cancelled.get()) {
+                        subscriber.onNext(this.document);
+                        subscriber.onComplete();
+                    }
+                }, delay.toNanos(), TimeUnit.NANOSECONDS);
+            };
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Helpers.java  0.10.0  10/19/2026
  * (#)Helpers.java  0.3.0   12/22/2023
  * (#)Helpers.java  0.2.0   12/21/2023
  *
  * @author    Jonathan Parker
- * @version   0.3.0
+ * @version   0.10.0
  * @since     0.2.0
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -33,6 +34,8 @@ package net.jmp.demo.mongodb.atlas.async;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 
+import java.util.concurrent.TimeUnit;
+
 import org.bson.conversions.Bson;
 
 import org.slf4j.ext.XLogger;
@@ -51,9 +54,15 @@ final class Helpers {
         final var database = mongoClient.getDatabase(databaseName);
         final var collection = database.getCollection(collectionName);
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var documentSubscriber = new PrintDocumentSubscriber(logger);
 
-        collection.find().subscribe(documentSubscriber);
+        documentSubscriber.recording(collection.getNamespace(), "find", null, 0);
+        documentSubscriber.deadline(deadline);
+
+        collection.find()
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(documentSubscriber);
         documentSubscriber.await();
 
         logger.exit();
@@ -66,16 +75,13 @@ final class Helpers {
                                  final XLogger logger) {
         logger.entry(mongoClient, databaseName, collectionName, filter);
 
-        final var documentSubscriber = new PrintDocumentSubscriber(logger);
-
         final var database = mongoClient.getDatabase(databaseName);
         final var collection = database.getCollection(collectionName);
 
-        collection.find(filter)
-                .first()
-                .subscribe(documentSubscriber);
+        final var document = NearCache.getInstance().findFirst(collection, filter);
 
-        documentSubscriber.await();
+        if (document != null)
+            logger.info(document.toJson());
 
         logger.exit();
     }
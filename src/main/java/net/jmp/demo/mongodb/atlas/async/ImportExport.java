@@ -0,0 +1,173 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ImportExport.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+final class ImportExport {
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final Properties properties;
+    private final MongoClient mongoClient;
+    private final boolean enabled;
+    private final String dbName;
+    private final List<String> collectionNames;
+    private final Path directory;
+    private final String restoredSuffix;
+
+    ImportExport(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.properties = properties;
+        this.mongoClient = mongoClient;
+
+        this.enabled = Boolean.parseBoolean(properties.getProperty("mongodb.export.enabled", "false"));
+        this.dbName = properties.getProperty("mongodb.export.db", "training");
+        this.collectionNames = Arrays.stream(properties.getProperty("mongodb.export.collections", "colors,people,restaurants,food").split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .toList();
+        this.directory = Path.of(properties.getProperty("mongodb.export.directory", "export"));
+        this.restoredSuffix = properties.getProperty("mongodb.import.suffix", "Restored");
+    }
+
+    void run() {
+        this.logger.entry();
+
+        if (!this.enabled) {
+            this.logger.info("Import and export are disabled");
+            this.logger.exit();
+
+            return;
+        }
+
+        this.logger.info("Beginning import and export operations...");
+
+        final var exported = this.exportBson();
+
+        this.importBson(exported);
+        this.roundTripNdjson();
+
+        this.logger.info("Ending import and export operations...");
+        this.logger.exit();
+    }
+
+    private Map<String, List<Path>> exportBson() {
+        this.logger.entry();
+
+        final Map<String, List<Path>> exported = new LinkedHashMap<>();
+        final var collections = new Collections(this.mongoClient);
+        final var exporter = new BsonExporter(this.properties, this.mongoClient);
+
+        for (final var collectionName : this.collectionNames) {
+            if (collections.existsCollection(this.dbName, collectionName)) {
+                try {
+                    final var result = exporter.export(this.dbName, collectionName, this.directory.resolve(collectionName + ".bson"));
+
+                    exported.put(collectionName, result.files());
+                } catch (final RuntimeException re) {
+                    this.logger.error(re.getMessage());
+                }
+            }
+        }
+
+        this.logger.exit(exported);
+
+        return exported;
+    }
+
+    /*
+     * Restore each export into a collection of its own, then drop it
+     */
+    private void importBson(final Map<String, List<Path>> exported) {
+        this.logger.entry(exported);
+
+        final var collections = new Collections(this.mongoClient);
+        final var importer = new BsonImporter(this.properties, this.mongoClient);
+
+        exported.forEach((collectionName, files) -> {
+            final var restoredName = collectionName + this.restoredSuffix;
+
+            try {
+                for (final var file : files)
+                    importer.importFile(file, this.dbName, restoredName);
+            } catch (final RuntimeException re) {
+                this.logger.error(re.getMessage());
+            } finally {
+                collections.dropCollection(this.dbName, restoredName);
+            }
+        });
+
+        this.logger.exit();
+    }
+
+    /*
+     * Export each collection as NDJSON, import it into a collection of
+     * its own, then drop it
+     */
+    private void roundTripNdjson() {
+        this.logger.entry();
+
+        final var collections = new Collections(this.mongoClient);
+        final var transfer = new NdjsonTransfer(this.properties, this.mongoClient);
+
+        for (final var collectionName : this.collectionNames) {
+            if (collections.existsCollection(this.dbName, collectionName)) {
+                final var restoredName = collectionName + this.restoredSuffix;
+
+                try {
+                    final var file = this.directory.resolve(collectionName + ".ndjson");
+
+                    transfer.exportCollection(this.dbName, collectionName, file);
+                    transfer.importFile(file, this.dbName, restoredName);
+                } catch (final RuntimeException re) {
+                    this.logger.error(re.getMessage());
+                } finally {
+                    collections.dropCollection(this.dbName, restoredName);
+                }
+            }
+        }
+
+        this.logger.exit();
+    }
+}
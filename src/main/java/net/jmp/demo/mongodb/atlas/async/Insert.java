@@ -1,16 +1,17 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Insert.java   0.10.0  10/19/2026
  * (#)Insert.java   0.7.0   01/09/2024
  * (#)Insert.java   0.2.0   12/20/2023
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.2.0
  *
  * MIT License
  *
- * Copyright (c) 2023, 2024 Jonathan M. Parker
+ * Copyright (c) 2023, 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -92,7 +93,9 @@ final class Insert {
         final var collection = database.getCollection(this.collectionName);
         final var document = new Document("color", "red").append("qty", 5);
 
-        ObservableSubscriber<InsertOneResult> insertSubscriber = new OperationSubscriber<>();
+        ObservableSubscriber<InsertOneResult> insertSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        insertSubscriber.recording(collection.getNamespace(), "insertOne", null, 1);
 
         collection.insertOne(document).subscribe(insertSubscriber);
         insertSubscriber.await();
@@ -105,7 +108,9 @@ final class Insert {
             this.logger.error(insertSubscriber.getError().getMessage());
         }
 
-        insertSubscriber = new OperationSubscriber<>(); // Don't reuse a subscriber
+        insertSubscriber = new OperationSubscriber<>(collection.getNamespace()); // Don't reuse a subscriber
+
+        insertSubscriber.recording(collection.getNamespace(), "insertOne", null, 1);
 
         collection.insertOne(new Document()
                 .append("_id", new ObjectId())
@@ -141,7 +146,9 @@ final class Insert {
                 new Document(color, "yellow").append(quantity, 5)
         );
 
-        final ObservableSubscriber<InsertManyResult> insertSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertManyResult> insertSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        insertSubscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
 
         collection.insertMany(documents).subscribe(insertSubscriber);
         insertSubscriber.await();
@@ -0,0 +1,157 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)JsonLineEncoder.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Encodes documents one at a time as single-line JSON through one
+ * JsonWriter and one buffer that are reused for every document.
+ *
+ * A JsonWriter refuses a second top-level document, so the writer is
+ * held open inside an array and each document is written as the next
+ * element of it; the separator written before the element is skipped.
+ * The buffer is a StringBuilder rather than a StringWriter, whose
+ * StringBuffer synchronizes every append.
+ *
+ * An encoder is not thread-safe. Each thread, or each subscriber
+ * whose onNext calls are serialized, uses its own.
+ */
+final class JsonLineEncoder {
+    /* The element written first so that every document follows a ", " */
+    private static final int SEPARATOR_LENGTH = ", ".length();
+
+    private final StringBuilder buffer = new StringBuilder(1024);
+    private final JsonWriter writer;
+    private char[] chars = new char[1024];
+    private int length;
+
+    JsonLineEncoder(final JsonWriterSettings settings) {
+        super();
+
+        if (settings.isIndent())
+            throw new IllegalArgumentException("Indented JSON does not fit on one line");
+
+        this.writer = new JsonWriter(new BuilderWriter(this.buffer), settings);
+
+        this.writer.writeStartDocument();
+        this.writer.writeName("lines");
+        this.writer.writeStartArray();
+        this.writer.writeNull();
+    }
+
+    /**
+     * Encode a document, replacing the previous one.
+     *
+     * @param   <T>         The type of the document
+     * @param   encoder     The encoder for the document
+     * @param   document    The document
+     * @param   context     The encoder context
+     * @return              This encoder
+     */
+    <T> JsonLineEncoder encode(final Encoder<T> encoder, final T document, final EncoderContext context) {
+        this.buffer.setLength(0);
+
+        encoder.encode(this.writer, document, context);
+
+        this.length = this.buffer.length() - SEPARATOR_LENGTH;
+
+        if (this.length > this.chars.length)
+            this.chars = new char[Math.max(this.length, this.chars.length * 2)];
+
+        this.buffer.getChars(SEPARATOR_LENGTH, this.buffer.length(), this.chars, 0);
+
+        return this;
+    }
+
+    /**
+     * Write the last document encoded, without copying it to a string.
+     *
+     * @param   out     The writer
+     * @throws          java.io.IOException When the write fails
+     */
+    void writeTo(final Writer out) throws IOException {
+        out.write(this.chars, 0, this.length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.chars, 0, this.length);
+    }
+
+    /* An unsynchronized writer onto a StringBuilder */
+
+    private static final class BuilderWriter extends Writer {
+        private final StringBuilder builder;
+
+        private BuilderWriter(final StringBuilder builder) {
+            super(builder);
+
+            this.builder = builder;
+        }
+
+        @Override
+        public void write(final int c) {
+            this.builder.append((char) c);
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            this.builder.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(final String str) {
+            this.builder.append(str);
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            this.builder.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,727 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)LocalAggregation.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoClientSettings;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonNumber;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+
+import org.bson.codecs.configuration.CodecRegistry;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * An in-process evaluator for a subset of the aggregation
+ * pipeline stages built by com.mongodb.client.model.Aggregates.
+ * It answers aggregations over a small, locally cached working
+ * set without a round trip to the server.
+ *
+ * Supported stages are $match, $project, $group (with the $sum,
+ * $avg, $min, $max and $count accumulators), $sort and $limit.
+ * Anything else results in an IllegalArgumentException.
+ */
+final class LocalAggregation {
+    private static final CodecRegistry CODEC_REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(CODEC_REGISTRY);
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final List<BsonDocument> documents;
+
+    LocalAggregation(final List<Document> documents) {
+        super();
+
+        this.documents = new ArrayList<>(documents.size());
+
+        documents.forEach(document -> this.documents.add(document.toBsonDocument(BsonDocument.class, CODEC_REGISTRY)));
+    }
+
+    static LocalAggregation load(final MongoClient mongoClient,
+                                 final String databaseName,
+                                 final String collectionName,
+                                 final XLogger logger) {
+        logger.entry(mongoClient, databaseName, collectionName);
+
+        final var database = mongoClient.getDatabase(databaseName);
+        final var collection = database.getCollection(collectionName);
+
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "find", null, 0);
+
+        collection.find().subscribe(subscriber);
+
+        final var result = new LocalAggregation(subscriber.get());
+
+        logger.info("Cached {} document(s) from {}.{}", result.size(), databaseName, collectionName);
+        logger.exit(result);
+
+        return result;
+    }
+
+    int size() {
+        return this.documents.size();
+    }
+
+    List<Document> aggregate(final List<? extends Bson> pipeline) {
+        this.logger.entry(pipeline);
+
+        List<BsonDocument> working = this.documents;
+
+        for (final var stage : pipeline) {
+            final var stageDocument = stage.toBsonDocument(BsonDocument.class, CODEC_REGISTRY);
+
+            if (stageDocument.size() != 1)
+                throw new IllegalArgumentException("A pipeline stage must have exactly one operator: " + stageDocument.toJson());
+
+            final var operator = stageDocument.getFirstKey();
+            final var specification = stageDocument.get(operator);
+
+            working = switch (operator) {
+                case "$match" -> this.match(working, specification.asDocument());
+                case "$project" -> this.project(working, specification.asDocument());
+                case "$group" -> this.group(working, specification.asDocument());
+                case "$sort" -> this.sort(working, specification.asDocument());
+                case "$limit" -> this.limit(working, specification.asNumber().intValue());
+                default -> throw new IllegalArgumentException("Unsupported aggregation stage: " + operator);
+            };
+        }
+
+        final List<Document> results = new ArrayList<>(working.size());
+
+        for (final var bsonDocument : working)
+            results.add(DOCUMENT_CODEC.decode(new BsonDocumentReader(bsonDocument), DecoderContext.builder().build()));
+
+        this.logger.exit(results);
+
+        return results;
+    }
+
+    private List<BsonDocument> match(final List<BsonDocument> input, final BsonDocument filter) {
+        final List<BsonDocument> output = new ArrayList<>();
+
+        for (final var document : input) {
+            if (matches(document, filter))
+                output.add(document);
+        }
+
+        return output;
+    }
+
+    private List<BsonDocument> project(final List<BsonDocument> input, final BsonDocument specification) {
+        final var excludeId = specification.containsKey("_id") && isFalse(specification.get("_id"));
+
+        var exclusion = false;
+
+        for (final var entry : specification.entrySet()) {
+            if (!entry.getKey().equals("_id") && isFalse(entry.getValue()))
+                exclusion = true;
+        }
+
+        // {_id: 0} on its own, as from Projections.excludeId(), excludes rather than includes
+
+        if (excludeId && specification.size() == 1)
+            exclusion = true;
+
+        final List<BsonDocument> output = new ArrayList<>(input.size());
+
+        for (final var document : input) {
+            final BsonDocument projected;
+
+            if (exclusion) {
+                // Only top-level fields can be excluded
+
+                projected = document.clone();
+
+                specification.forEach((field, value) -> {
+                    if (isFalse(value))
+                        projected.remove(field);
+                });
+            } else {
+                projected = new BsonDocument();
+
+                if (!excludeId && document.containsKey("_id"))
+                    projected.put("_id", document.get("_id"));
+
+                specification.forEach((field, value) -> {
+                    if (field.equals("_id") && isInclusionFlag(value))
+                        return;     // Handled above
+
+                    final var result = isInclusionFlag(value) ? getPath(document, field) : evaluate(document, value);
+
+                    if (result != null)
+                        putPath(projected, field, result);
+                });
+            }
+
+            output.add(projected);
+        }
+
+        return output;
+    }
+
+    private List<BsonDocument> group(final List<BsonDocument> input, final BsonDocument specification) {
+        if (!specification.containsKey("_id"))
+            throw new IllegalArgumentException("A $group stage requires an _id expression");
+
+        final var keyExpression = specification.get("_id");
+        final Map<GroupKey, Accumulator[]> groups = new LinkedHashMap<>();
+        final List<String> fields = new ArrayList<>();
+        final List<BsonValue> operands = new ArrayList<>();
+        final List<String> operators = new ArrayList<>();
+
+        specification.forEach((field, value) -> {
+            if (!field.equals("_id")) {
+                final var accumulator = value.asDocument();
+
+                if (accumulator.size() != 1)
+                    throw new IllegalArgumentException("An accumulator must have exactly one operator: " + field);
+
+                fields.add(field);
+                operators.add(accumulator.getFirstKey());
+                operands.add(accumulator.get(accumulator.getFirstKey()));
+            }
+        });
+
+        for (final var document : input) {
+            final var key = evaluate(document, keyExpression);
+
+            final var accumulators = groups.computeIfAbsent(new GroupKey(key == null ? BsonNull.VALUE : key), k -> {
+                final var created = new Accumulator[fields.size()];
+
+                for (int i = 0; i < created.length; i++)
+                    created[i] = newAccumulator(operators.get(i));
+
+                return created;
+            });
+
+            for (int i = 0; i < accumulators.length; i++)
+                accumulators[i].accept(evaluate(document, operands.get(i)));
+        }
+
+        final List<BsonDocument> output = new ArrayList<>(groups.size());
+
+        groups.forEach((key, accumulators) -> {
+            final var grouped = new BsonDocument("_id", key.value());
+
+            for (int i = 0; i < accumulators.length; i++)
+                grouped.put(fields.get(i), accumulators[i].result());
+
+            output.add(grouped);
+        });
+
+        return output;
+    }
+
+    private List<BsonDocument> sort(final List<BsonDocument> input, final BsonDocument specification) {
+        Comparator<BsonDocument> comparator = null;
+
+        for (final var entry : specification.entrySet()) {
+            final var field = entry.getKey();
+            final var direction = entry.getValue().asNumber().intValue();
+
+            Comparator<BsonDocument> fieldComparator = (a, b) -> compareValues(valueOrNull(getPath(a, field)),
+                                                                               valueOrNull(getPath(b, field)));
+
+            if (direction < 0)
+                fieldComparator = fieldComparator.reversed();
+
+            comparator = comparator == null ? fieldComparator : comparator.thenComparing(fieldComparator);
+        }
+
+        final List<BsonDocument> output = new ArrayList<>(input);
+
+        if (comparator != null)
+            output.sort(comparator);
+
+        return output;
+    }
+
+    private List<BsonDocument> limit(final List<BsonDocument> input, final int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("The $limit must be positive: " + limit);
+
+        return input.size() <= limit ? input : new ArrayList<>(input.subList(0, limit));
+    }
+
+    /* Query evaluation */
+
+    private static boolean matches(final BsonDocument document, final BsonDocument filter) {
+        for (final var entry : filter.entrySet()) {
+            final var key = entry.getKey();
+            final var condition = entry.getValue();
+
+            final var result = switch (key) {
+                case "$and" -> condition.asArray().stream().allMatch(f -> matches(document, f.asDocument()));
+                case "$or" -> condition.asArray().stream().anyMatch(f -> matches(document, f.asDocument()));
+                case "$nor" -> condition.asArray().stream().noneMatch(f -> matches(document, f.asDocument()));
+                default -> {
+                    if (key.startsWith("$"))
+                        throw new IllegalArgumentException("Unsupported query operator: " + key);
+
+                    yield matchesField(candidates(document, key), condition);
+                }
+            };
+
+            if (!result)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean matchesField(final List<BsonValue> values, final BsonValue condition) {
+        if (!isOperatorDocument(condition))
+            return equalsAny(values, condition);
+
+        for (final var entry : condition.asDocument().entrySet()) {
+            final var operand = entry.getValue();
+
+            final var result = switch (entry.getKey()) {
+                case "$eq" -> equalsAny(values, operand);
+                case "$ne" -> !equalsAny(values, operand);
+                case "$gt" -> values.stream().anyMatch(v -> comparable(v, operand) && compareValues(v, operand) > 0);
+                case "$gte" -> values.stream().anyMatch(v -> comparable(v, operand) && compareValues(v, operand) >= 0);
+                case "$lt" -> values.stream().anyMatch(v -> comparable(v, operand) && compareValues(v, operand) < 0);
+                case "$lte" -> values.stream().anyMatch(v -> comparable(v, operand) && compareValues(v, operand) <= 0);
+                case "$in" -> operand.asArray().stream().anyMatch(o -> equalsAny(values, o));
+                case "$nin" -> operand.asArray().stream().noneMatch(o -> equalsAny(values, o));
+                case "$exists" -> operand.asBoolean().getValue() != values.isEmpty();
+                case "$size" -> values.stream().anyMatch(v -> v.isArray() && v.asArray().size() == operand.asNumber().intValue());
+                default -> throw new IllegalArgumentException("Unsupported query operator: " + entry.getKey());
+            };
+
+            if (!result)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean equalsAny(final List<BsonValue> values, final BsonValue operand) {
+        if (operand.isNull())
+            return values.isEmpty() || values.stream().anyMatch(BsonValue::isNull);
+
+        return values.stream().anyMatch(v -> comparable(v, operand) && compareValues(v, operand) == 0);
+    }
+
+    /*
+     * Collects every value a query path can match: the value
+     * itself and, when it is an array, each of its elements.
+     */
+    private static List<BsonValue> candidates(final BsonDocument document, final String path) {
+        final List<BsonValue> values = new ArrayList<>();
+
+        collect(document, path.split("\\."), 0, values);
+
+        return values;
+    }
+
+    private static void collect(final BsonValue value, final String[] parts, final int index, final List<BsonValue> values) {
+        if (index == parts.length) {
+            values.add(value);
+
+            if (value.isArray())
+                values.addAll(value.asArray().getValues());
+        } else if (value.isDocument()) {
+            final var child = value.asDocument().get(parts[index]);
+
+            if (child != null)
+                collect(child, parts, index + 1, values);
+        } else if (value.isArray()) {
+            for (final var element : value.asArray()) {
+                if (element.isDocument())
+                    collect(element, parts, index, values);
+            }
+        }
+    }
+
+    /* Expression evaluation */
+
+    private static BsonValue evaluate(final BsonDocument document, final BsonValue expression) {
+        if (expression.isString() && expression.asString().getValue().startsWith("$"))
+            return getPath(document, expression.asString().getValue().substring(1));
+
+        if (expression.isDocument()) {
+            final var expressionDocument = expression.asDocument();
+
+            if (isOperatorDocument(expression)) {
+                final var operator = expressionDocument.getFirstKey();
+                final var operand = expressionDocument.get(operator);
+
+                return switch (operator) {
+                    case "$literal" -> operand;
+                    case "$arrayElemAt" -> arrayElementAt(document, operand.asArray());
+                    default -> throw new IllegalArgumentException("Unsupported expression operator: " + operator);
+                };
+            }
+
+            final var result = new BsonDocument();
+
+            expressionDocument.forEach((field, value) -> {
+                final var evaluated = evaluate(document, value);
+
+                if (evaluated != null)
+                    result.put(field, evaluated);
+            });
+
+            return result;
+        }
+
+        if (expression.isArray()) {
+            final var result = new BsonArray();
+
+            for (final var element : expression.asArray())
+                result.add(valueOrNull(evaluate(document, element)));
+
+            return result;
+        }
+
+        return expression;
+    }
+
+    private static BsonValue arrayElementAt(final BsonDocument document, final BsonArray arguments) {
+        final var array = evaluate(document, arguments.get(0));
+        final var index = evaluate(document, arguments.get(1));
+
+        if (array == null || !array.isArray() || index == null || !index.isNumber())
+            return null;
+
+        final var elements = array.asArray();
+        final var position = index.asNumber().intValue() < 0
+                ? elements.size() + index.asNumber().intValue()
+                : index.asNumber().intValue();
+
+        return position >= 0 && position < elements.size() ? elements.get(position) : null;
+    }
+
+    /*
+     * Resolves a dotted field path; null means the field is missing.
+     */
+    private static BsonValue getPath(final BsonValue value, final String path) {
+        final var separator = path.indexOf('.');
+        final var head = separator < 0 ? path : path.substring(0, separator);
+
+        BsonValue child = null;
+
+        if (value.isDocument()) {
+            child = value.asDocument().get(head);
+        } else if (value.isArray()) {
+            final var result = new BsonArray();
+
+            for (final var element : value.asArray()) {
+                final var resolved = getPath(element, path);
+
+                if (resolved != null)
+                    result.add(resolved);
+            }
+
+            return result;
+        }
+
+        if (child == null || separator < 0)
+            return child;
+
+        return getPath(child, path.substring(separator + 1));
+    }
+
+    private static void putPath(final BsonDocument document, final String path, final BsonValue value) {
+        final var separator = path.indexOf('.');
+
+        if (separator < 0) {
+            document.put(path, value);
+        } else {
+            final var head = path.substring(0, separator);
+            var child = document.get(head);
+
+            if (child == null || !child.isDocument()) {
+                child = new BsonDocument();
+                document.put(head, child);
+            }
+
+            putPath(child.asDocument(), path.substring(separator + 1), value);
+        }
+    }
+
+    private static boolean isOperatorDocument(final BsonValue value) {
+        return value.isDocument() && !value.asDocument().isEmpty() && value.asDocument().getFirstKey().startsWith("$");
+    }
+
+    private static boolean isInclusionFlag(final BsonValue value) {
+        return value.isBoolean() || value.isNumber();
+    }
+
+    private static boolean isFalse(final BsonValue value) {
+        return (value.isBoolean() && !value.asBoolean().getValue())
+                || (value.isNumber() && value.asNumber().doubleValue() == 0);
+    }
+
+    private static BsonValue valueOrNull(final BsonValue value) {
+        return value == null ? BsonNull.VALUE : value;
+    }
+
+    /* Comparison in the server's canonical type order */
+
+    private static boolean comparable(final BsonValue a, final BsonValue b) {
+        return typeOrder(a) == typeOrder(b);
+    }
+
+    private static int typeOrder(final BsonValue value) {
+        return switch (value.getBsonType()) {
+            case NULL, UNDEFINED -> 1;
+            case INT32, INT64, DOUBLE, DECIMAL128 -> 2;
+            case STRING, SYMBOL -> 3;
+            case DOCUMENT -> 4;
+            case ARRAY -> 5;
+            case BINARY -> 6;
+            case OBJECT_ID -> 7;
+            case BOOLEAN -> 8;
+            case DATE_TIME -> 9;
+            case TIMESTAMP -> 10;
+            case REGULAR_EXPRESSION -> 11;
+            default -> 12;
+        };
+    }
+
+    static int compareValues(final BsonValue a, final BsonValue b) {
+        final var order = Integer.compare(typeOrder(a), typeOrder(b));
+
+        if (order != 0)
+            return order;
+
+        return switch (a.getBsonType()) {
+            case INT32, INT64, DOUBLE, DECIMAL128 -> compareNumbers(a, b);
+            case STRING, SYMBOL -> stringValue(a).compareTo(stringValue(b));
+            case ARRAY -> compareArrays(a.asArray(), b.asArray());
+            case OBJECT_ID -> a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case BOOLEAN -> Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            case DATE_TIME -> Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case TIMESTAMP -> a.asTimestamp().compareTo(b.asTimestamp());
+            case NULL, UNDEFINED -> 0;
+            default -> a.equals(b) ? 0 : a.toString().compareTo(b.toString());
+        };
+    }
+
+    private static int compareNumbers(final BsonValue a, final BsonValue b) {
+        if (isIntegral(a) && isIntegral(b))
+            return Long.compare(number(a).longValue(), number(b).longValue());
+
+        return Double.compare(number(a).doubleValue(), number(b).doubleValue());
+    }
+
+    private static int compareArrays(final BsonArray a, final BsonArray b) {
+        final var length = Math.min(a.size(), b.size());
+
+        for (int i = 0; i < length; i++) {
+            final var result = compareValues(a.get(i), b.get(i));
+
+            if (result != 0)
+                return result;
+        }
+
+        return Integer.compare(a.size(), b.size());
+    }
+
+    private static boolean isNumeric(final BsonValue value) {
+        return value.isNumber() || value.isDecimal128();
+    }
+
+    private static BsonNumber number(final BsonValue value) {
+        return (BsonNumber) value;
+    }
+
+    private static boolean isIntegral(final BsonValue value) {
+        return value.getBsonType() == BsonType.INT32 || value.getBsonType() == BsonType.INT64;
+    }
+
+    private static String stringValue(final BsonValue value) {
+        return value.isSymbol() ? value.asSymbol().getSymbol() : value.asString().getValue();
+    }
+
+    /*
+     * Group keys compare the way the server does, so 4 and 4L
+     * and 4.0 all land in the same group.
+     */
+    private record GroupKey(BsonValue value) {
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof GroupKey other
+                    && comparable(this.value, other.value)
+                    && compareValues(this.value, other.value) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return isNumeric(this.value)
+                    ? Double.hashCode(number(this.value).doubleValue())
+                    : this.value.hashCode();
+        }
+    }
+
+    /* Accumulators */
+
+    private static Accumulator newAccumulator(final String operator) {
+        return switch (operator) {
+            case "$sum" -> new SumAccumulator();
+            case "$avg" -> new AverageAccumulator();
+            case "$min" -> new ExtremeAccumulator(-1);
+            case "$max" -> new ExtremeAccumulator(1);
+            case "$count" -> new CountAccumulator();
+            default -> throw new IllegalArgumentException("Unsupported accumulator: " + operator);
+        };
+    }
+
+    private interface Accumulator {
+        void accept(BsonValue value);
+
+        BsonValue result();
+    }
+
+    /*
+     * Integral values are summed in a long until either a
+     * floating point value arrives or the long overflows.
+     */
+    private static final class SumAccumulator implements Accumulator {
+        private long longSum;
+        private double doubleSum;
+        private boolean isDouble;
+
+        @Override
+        public void accept(final BsonValue value) {
+            if (value == null || !isNumeric(value))
+                return;
+
+            if (!this.isDouble && isIntegral(value)) {
+                try {
+                    this.longSum = Math.addExact(this.longSum, number(value).longValue());
+
+                    return;
+                } catch (final ArithmeticException ae) {
+                    this.isDouble = true;
+                }
+            }
+
+            this.isDouble = true;
+            this.doubleSum += number(value).doubleValue();
+        }
+
+        @Override
+        public BsonValue result() {
+            if (this.isDouble)
+                return new BsonDouble(this.doubleSum + this.longSum);
+
+            if (this.longSum >= Integer.MIN_VALUE && this.longSum <= Integer.MAX_VALUE)
+                return new BsonInt32((int) this.longSum);
+
+            return new BsonInt64(this.longSum);
+        }
+    }
+
+    private static final class AverageAccumulator implements Accumulator {
+        private double sum;
+        private long count;
+
+        @Override
+        public void accept(final BsonValue value) {
+            if (value != null && isNumeric(value)) {
+                this.sum += number(value).doubleValue();
+                this.count++;
+            }
+        }
+
+        @Override
+        public BsonValue result() {
+            return this.count == 0 ? BsonNull.VALUE : new BsonDouble(this.sum / this.count);
+        }
+    }
+
+    private static final class ExtremeAccumulator implements Accumulator {
+        private final int sign;
+        private BsonValue extreme;
+
+        private ExtremeAccumulator(final int sign) {
+            this.sign = sign;
+        }
+
+        @Override
+        public void accept(final BsonValue value) {
+            if (value == null || value.isNull())
+                return;
+
+            if (this.extreme == null || Integer.signum(compareValues(value, this.extreme)) == this.sign)
+                this.extreme = value;
+        }
+
+        @Override
+        public BsonValue result() {
+            return valueOrNull(this.extreme);
+        }
+    }
+
+    private static final class CountAccumulator implements Accumulator {
+        private long count;
+
+        @Override
+        public void accept(final BsonValue value) {
+            this.count++;
+        }
+
+        @Override
+        public BsonValue result() {
+            return this.count <= Integer.MAX_VALUE ? new BsonInt32((int) this.count) : new BsonInt64(this.count);
+        }
+    }
+}
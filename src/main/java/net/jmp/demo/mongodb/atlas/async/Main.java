@@ -1,6 +1,7 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Main.java 0.10.0  10/19/2026
  * (#)Main.java 0.9.0   02/03/2024
  * (#)Main.java 0.8.0   02/03/2024
  * (#)Main.java 0.7.0   01/09/2024
@@ -12,12 +13,12 @@ package net.jmp.demo.mongodb.atlas.async;
  * (#)Main.java 0.1.0   12/15/2023
  *
  * @author    Jonathan Parker
- * @version   0.9.0
+ * @version   0.10.0
  * @since     0.1.0
  *
  * MIT License
  *
- * Copyright (c) 2023, 2024 Jonathan M. Parker
+ * Copyright (c) 2023, 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -38,12 +39,15 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
+import java.nio.file.Path;
+
 import java.util.Optional;
 import java.util.Properties;
 
@@ -73,18 +77,41 @@ public final class Main {
 
             this.logger.info("Connecting to {}", mongoDbUriLoggable);
 
+            Deadlines.configure(props);
+            ReadRouter.configure(props);
+            AdmissionControl.configure(props);
+            NearCache.configure(props);
+            HedgedReader.configure(props);
+            AsyncDocumentPrinter.configure(props);
+
             try (final var mongoClient = MongoClients.create(mongoDbUri)) {
-                new Find(props, mongoClient).run();
-                new Insert(props, mongoClient).run();
-                new UpdateAndReplace(props, mongoClient).run();
-                new Delete(props, mongoClient).run();
-                new UpdateArrays(props, mongoClient).run();
-                new Upsert(props, mongoClient).run();
-                new Bulk(props, mongoClient).run();
-                new Query(props, mongoClient).run();
-                new Compound(props, mongoClient).run();
-                new Aggregation(props, mongoClient).run();
+                final var invalidationBus = this.startCacheInvalidation(props, mongoClient);
+
+                try {
+                    new Find(props, mongoClient).run();
+                    new Insert(props, mongoClient).run();
+                    new UpdateAndReplace(props, mongoClient).run();
+                    new Delete(props, mongoClient).run();
+                    new UpdateArrays(props, mongoClient).run();
+                    new Upsert(props, mongoClient).run();
+                    new Bulk(props, mongoClient).run();
+                    new Query(props, mongoClient).run();
+                    new Compound(props, mongoClient).run();
+                    new ContentionBenchmark(props, mongoClient).run();
+                    new Aggregation(props, mongoClient).run();
+                    new TimeSeries(props, mongoClient).run();
+                    new ChangeStreams(props, mongoClient).run();
+                    new ImportExport(props, mongoClient).run();
+                } finally {
+                    invalidationBus.ifPresent(CacheInvalidationBus::close);
+                }
             } finally {
+                NearCache.getInstance().logMetrics();
+                HedgedReader.getInstance().logMetrics();
+                ReadRouter.getInstance().logMetrics();
+                AdmissionControl.getInstance().logMetrics();
+                AsyncDocumentPrinter.getInstance().close();
+
                 this.logger.info("Disconnected from {}", mongoDbUriLoggable);
             }
         });
@@ -93,6 +120,29 @@ public final class Main {
         this.logger.exit();
     }
 
+    private Optional<CacheInvalidationBus> startCacheInvalidation(final Properties properties, final MongoClient mongoClient) {
+        this.logger.entry(properties, mongoClient);
+
+        CacheInvalidationBus bus = null;
+
+        if (Boolean.parseBoolean(properties.getProperty("mongodb.cache.invalidation.enabled", "false"))) {
+            final var dbName = properties.getProperty("mongodb.cache.invalidation.db", "training");
+
+            bus = new CacheInvalidationBus(CacheInvalidationBus.forDatabase(mongoClient, dbName),
+                    NearCache.getInstance(),
+                    Path.of(properties.getProperty("mongodb.cache.invalidation.tokenFile", "invalidation-token.json")),
+                    Long.parseLong(properties.getProperty("mongodb.cache.invalidation.checkpointMillis", "1000")));
+
+            bus.start();
+        }
+
+        final var result = Optional.ofNullable(bus);
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
     private Optional<Properties> getAppProperties() {
         this.logger.entry();
 
@@ -0,0 +1,380 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)MaterializedView.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.MergeOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.Variable;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * A precomputed aggregation kept in a target collection by $merge.
+ * Each refresh only aggregates the source documents whose watermark
+ * field lies above the high-water mark of the previous refresh. The
+ * high-water marks are kept in a separate collection, one document per
+ * view.
+ *
+ * The watermark field must be monotonic in commit order: once a value
+ * is visible, no document with a lower value may commit later, or it
+ * falls below the high-water mark and is never aggregated. Values the
+ * client picks before writing, such as an ObjectId _id or a client
+ * clock, do not guarantee that when writers run concurrently; a
+ * sequence assigned under a lock, or a single writer, does. Otherwise
+ * rebuild() periodically to pick up stragglers.
+ *
+ * Because only new documents are aggregated, the merge options must
+ * fold new results into existing ones; see additive(). That is only
+ * correct for append-only sources; use rebuild() after updates or
+ * deletes in the source.
+ *
+ * The $merge and the watermark update cannot be atomic, so the range
+ * being merged is recorded as pending first. A refresh that finds a
+ * pending range merges that same range again before going further.
+ * Every merged view document is stamped with the high-water mark of
+ * the refresh that last reached it. The additive merge skips documents
+ * already stamped, so merging a range twice does not count it twice.
+ */
+final class MaterializedView {
+    static final String REFRESHED_THROUGH = "refreshedThrough";
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String sourceCollectionName;
+    private final String viewCollectionName;
+    private final String watermarksCollectionName;
+    private final String watermarkField;
+    private final List<Bson> pipeline;
+    private final MergeOptions mergeOptions;
+
+    MaterializedView(final MongoClient mongoClient,
+                     final String dbName,
+                     final String sourceCollectionName,
+                     final String viewCollectionName,
+                     final String watermarksCollectionName,
+                     final String watermarkField,
+                     final List<Bson> pipeline,
+                     final MergeOptions mergeOptions) {
+        super();
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.sourceCollectionName = sourceCollectionName;
+        this.viewCollectionName = viewCollectionName;
+        this.watermarksCollectionName = watermarksCollectionName;
+        this.watermarkField = watermarkField;
+        this.pipeline = List.copyOf(pipeline);
+        this.mergeOptions = mergeOptions;
+    }
+
+    /**
+     * Merge options that add the numeric fields of a new result to
+     * those of the existing view document with the same _id.
+     *
+     * @param   fields  The names of the fields to add
+     * @return          The merge options
+     */
+    static MergeOptions additive(final String... fields) {
+        final var sums = new Document();
+
+        // $$high is the high-water mark of the refresh; a document already stamped with it keeps its values
+
+        final var applied = new Document("$gte", List.of("$" + REFRESHED_THROUGH, "$$high"));
+
+        for (final var field : fields)
+            sums.append(field, new Document("$cond", List.of(applied, "$" + field, new Document("$add", List.of("$" + field, "$$new." + field)))));
+
+        sums.append(REFRESHED_THROUGH, "$$high");
+
+        return new MergeOptions()
+                .whenMatched(MergeOptions.WhenMatched.PIPELINE)
+                .whenMatchedPipeline(List.of(new Document("$set", sums)))
+                .whenNotMatched(MergeOptions.WhenNotMatched.INSERT);
+    }
+
+    String getViewCollectionName() {
+        return this.viewCollectionName;
+    }
+
+    void refresh() {
+        this.logger.entry();
+
+        final var state = this.getState();
+
+        var lowWatermark = state != null ? state.get("watermark") : null;
+
+        final var pendingWatermark = state != null ? state.get("pending") : null;
+
+        if (pendingWatermark != null) {
+            this.logger.warn("Completing the interrupted refresh of view {} up to {}", this.viewCollectionName, pendingWatermark);
+
+            this.mergeRange(lowWatermark, pendingWatermark);
+
+            lowWatermark = pendingWatermark;
+        }
+
+        final var highWatermark = this.findHighWatermark();
+
+        if (highWatermark == null) {
+            this.logger.info("Source collection {} is empty; nothing to refresh", this.sourceCollectionName);
+        } else if (highWatermark.equals(lowWatermark)) {
+            this.logger.info("View {} is current as of {}", this.viewCollectionName, highWatermark);
+        } else {
+            this.mergeRange(lowWatermark, highWatermark);
+
+            this.logger.info("Refreshed view {} from {} (exclusive) to {} (inclusive)",
+                    this.viewCollectionName,
+                    lowWatermark,
+                    highWatermark);
+        }
+
+        this.logger.exit();
+    }
+
+    void rebuild() {
+        this.logger.entry();
+
+        this.drop();
+        this.refresh();
+
+        this.logger.exit();
+    }
+
+    void drop() {
+        this.logger.entry();
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+
+        final var view = new MongoNamespace(this.dbName, this.viewCollectionName);
+        final ObservableSubscriber<Void> dropSubscriber = new OperationSubscriber<>(view);
+
+        dropSubscriber.recording(view, "drop", null, 0);
+
+        database.getCollection(this.viewCollectionName).drop().subscribe(dropSubscriber);
+
+        dropSubscriber.await();
+
+        final var watermarks = new MongoNamespace(this.dbName, this.watermarksCollectionName);
+        final var filter = Filters.eq("_id", this.viewCollectionName);
+        final ObservableSubscriber<DeleteResult> deleteSubscriber = new OperationSubscriber<>(watermarks);
+
+        deleteSubscriber.recording(watermarks, "deleteOne", filter, 0);
+
+        database.getCollection(this.watermarksCollectionName)
+                .deleteOne(filter)
+                .subscribe(deleteSubscriber);
+
+        deleteSubscriber.await();
+
+        this.logger.info("Dropped view {}", this.viewCollectionName);
+
+        this.logger.exit();
+    }
+
+    /*
+     * Record the range as pending, merge it, then make its upper end the
+     * watermark, which also clears the pending range
+     */
+    private void mergeRange(final Object lowWatermark, final Object highWatermark) {
+        this.logger.entry(lowWatermark, highWatermark);
+
+        this.setPending(highWatermark);
+
+        final var range = lowWatermark == null
+                ? Filters.lte(this.watermarkField, highWatermark)
+                : Filters.and(Filters.gt(this.watermarkField, lowWatermark), Filters.lte(this.watermarkField, highWatermark));
+
+        final List<Bson> stages = new ArrayList<>(this.pipeline.size() + 3);
+
+        stages.add(Aggregates.match(range));
+        stages.addAll(this.pipeline);
+        stages.add(Aggregates.set(new Field<>(REFRESHED_THROUGH, highWatermark)));
+        stages.add(Aggregates.merge(new MongoNamespace(this.dbName, this.viewCollectionName), this.mergeOptions(highWatermark)));
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.sourceCollectionName);
+
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.AGGREGATE);
+        final ObservableSubscriber<Void> subscriber = new OperationSubscriber<>(new MongoNamespace(this.dbName, this.viewCollectionName));
+
+        subscriber.recording(collection.getNamespace(), "aggregate", range, 0);
+        subscriber.deadline(deadline);
+
+        collection.aggregate(stages)
+                .allowDiskUse(true)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .toCollection()
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        this.setWatermark(highWatermark);
+
+        this.logger.exit();
+    }
+
+    /*
+     * A pipeline merge gets the high-water mark as $$high; declaring
+     * let variables means $$new has to be declared too
+     */
+    private MergeOptions mergeOptions(final Object highWatermark) {
+        final var options = new MergeOptions()
+                .uniqueIdentifier(this.mergeOptions.getUniqueIdentifier())
+                .whenMatched(this.mergeOptions.getWhenMatched())
+                .whenMatchedPipeline(this.mergeOptions.getWhenMatchedPipeline())
+                .whenNotMatched(this.mergeOptions.getWhenNotMatched());
+
+        if (this.mergeOptions.getWhenMatched() == MergeOptions.WhenMatched.PIPELINE)
+            options.variables(List.of(new Variable<>("new", "$$ROOT"), new Variable<>("high", highWatermark)));
+
+        return options;
+    }
+
+    private Document getState() {
+        this.logger.entry();
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.watermarksCollectionName);
+
+        final var filter = Filters.eq("_id", this.viewCollectionName);
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+        collection.find(filter)
+                .first()
+                .subscribe(subscriber);
+
+        final var result = subscriber.first();
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private Object findHighWatermark() {
+        this.logger.entry();
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.sourceCollectionName);
+
+        final var filter = Filters.exists(this.watermarkField);
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+        collection.find(filter)
+                .projection(Projections.include(this.watermarkField))
+                .sort(Sorts.descending(this.watermarkField))
+                .first()
+                .subscribe(subscriber);
+
+        final var document = subscriber.first();
+        final var result = document != null ? document.get(this.watermarkField) : null;
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private void setPending(final Object watermark) {
+        this.logger.entry(watermark);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.watermarksCollectionName);
+
+        final var filter = Filters.eq("_id", this.viewCollectionName);
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
+
+        collection.updateOne(filter,
+                        Updates.combine(Updates.set("source", this.sourceCollectionName), Updates.set("pending", watermark)),
+                        new UpdateOptions().upsert(true))
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        this.logger.exit();
+    }
+
+    private void setWatermark(final Object watermark) {
+        this.logger.entry(watermark);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.watermarksCollectionName);
+
+        final var document = new Document("_id", this.viewCollectionName)
+                .append("source", this.sourceCollectionName)
+                .append("watermark", watermark)
+                .append("refreshed", new Date());
+
+        final var filter = Filters.eq("_id", this.viewCollectionName);
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "replaceOne", filter, 0);
+
+        collection.replaceOne(filter, document, new ReplaceOptions().upsert(true))
+                .subscribe(subscriber);
+
+        subscriber.await();
+
+        this.logger.exit();
+    }
+}
@@ -0,0 +1,436 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)NdjsonTransfer.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.InsertManyOptions;
+
+import com.mongodb.client.result.InsertManyResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Queue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.RawBsonDocument;
+
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.RawBsonDocumentCodec;
+
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonReader;
+import org.bson.json.JsonWriterSettings;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Imports and exports newline-delimited JSON, one Extended JSON
+ * document per line, as mongoimport and mongoexport do.
+ *
+ * The import is a pipeline of three stages: one thread reads lines
+ * through a large buffer and groups them into chunks, a pool of
+ * workers parses the chunks with JsonReader straight into
+ * RawBsonDocuments, and one thread inserts the parsed chunks in the
+ * order they were read, one at a time when ordered and up to
+ * maxInFlight at once when not. A bounded queue between the stages
+ * keeps memory flat when the server is the bottleneck.
+ *
+ * The export streams the cursor as RawBsonDocuments and encodes each
+ * with one JsonLineEncoder, whose reused buffer goes straight to the
+ * file.
+ *
+ * The busy time of every stage is reported, so the slowest one shows.
+ */
+final class NdjsonTransfer {
+    /**
+     * The work done by one stage: items handled and the time spent
+     * handling them, summed over its threads.
+     */
+    record Stage(String name, long items, long nanos) {
+        double itemsPerSecond() {
+            return this.nanos == 0 ? 0 : this.items / (this.nanos / 1e9);
+        }
+    }
+
+    /**
+     * The outcome of an import or export.
+     */
+    record Result(long documents, long nanos, List<Stage> stages) {
+    }
+
+    private record Chunk(long firstLine, List<String> lines) {
+    }
+
+    private static final RawBsonDocumentCodec CODEC = new RawBsonDocumentCodec();
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final int parseWorkers;
+    private final int linesPerChunk;
+    private final boolean ordered;
+    private final int maxInFlight;
+    private final int batchSize;
+    private final int bufferChars;
+    private final JsonWriterSettings writerSettings;
+    private final long timeoutSeconds;
+
+    NdjsonTransfer(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.parseWorkers = Integer.parseInt(properties.getProperty("mongodb.ndjson.parseWorkers", "4"));
+        this.linesPerChunk = Integer.parseInt(properties.getProperty("mongodb.ndjson.linesPerChunk", "1000"));
+        this.ordered = Boolean.parseBoolean(properties.getProperty("mongodb.ndjson.ordered", "false"));
+        this.maxInFlight = Integer.parseInt(properties.getProperty("mongodb.ndjson.maxInFlight", "4"));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.ndjson.batchSize", "1000"));
+        this.bufferChars = Integer.parseInt(properties.getProperty("mongodb.ndjson.bufferChars", "1048576"));
+        this.timeoutSeconds = Long.parseLong(properties.getProperty("mongodb.ndjson.timeoutSeconds", "600"));
+
+        this.writerSettings = JsonWriterSettings.builder()
+                .outputMode(JsonMode.valueOf(properties.getProperty("mongodb.ndjson.outputMode", "relaxed").toUpperCase(Locale.ROOT)))
+                .build();
+    }
+
+    /**
+     * Write every document of a collection to a file, one per line.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @param   file            The file to write
+     * @return                  The documents written and the time spent in each stage
+     */
+    Result exportCollection(final String dbName, final String collectionName, final Path file) {
+        this.logger.entry(dbName, collectionName, file);
+
+        final MongoCollection<RawBsonDocument> collection = this.mongoClient.getDatabase(dbName).getCollection(collectionName, RawBsonDocument.class);
+        final var encoderContext = EncoderContext.builder().build();
+        final var json = new JsonLineEncoder(this.writerSettings);
+        final long[] nanos = new long[2];
+        final var start = System.nanoTime();
+
+        long documents;
+
+        try {
+            final var directory = file.toAbsolutePath().getParent();
+
+            if (directory != null)
+                Files.createDirectories(directory);
+
+            try (final var writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), this.bufferChars)) {
+                final var holder = new AtomicReference<StreamingSubscriber<RawBsonDocument>>();
+
+                final var subscriber = new StreamingSubscriber<RawBsonDocument>(this.batchSize, document -> {
+                    if (holder.get().getError() != null)
+                        return;
+
+                    final var encodeStart = System.nanoTime();
+
+                    json.encode(CODEC, document, encoderContext);
+
+                    final var writeStart = System.nanoTime();
+
+                    try {
+                        json.writeTo(writer);
+                        writer.write('\n');
+                    } catch (final IOException ioe) {
+                        holder.get().getSubscription().cancel();
+                        holder.get().onError(new UncheckedIOException(ioe));
+                    }
+
+                    nanos[0] += writeStart - encodeStart;
+                    nanos[1] += System.nanoTime() - writeStart;
+                });
+
+                holder.set(subscriber);
+
+                subscriber.recording(collection.getNamespace(), "find", null, this.batchSize);
+
+                collection.find()
+                        .batchSize(this.batchSize)
+                        .subscribe(subscriber);
+
+                subscriber.await(this.timeoutSeconds, TimeUnit.SECONDS);
+
+                documents = subscriber.getTimings().items();
+            }
+        } catch (final IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        final var elapsed = System.nanoTime() - start;
+
+        final var result = new Result(documents, elapsed, List.of(
+                new Stage("read", documents, elapsed - nanos[0] - nanos[1]),
+                new Stage("encode", documents, nanos[0]),
+                new Stage("write", documents, nanos[1])));
+
+        this.log("Exported", dbName + "." + collectionName, file, result);
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    /**
+     * Insert every line of a file as a document.
+     *
+     * @param   file            The file to read
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     * @return                  The documents inserted and the time spent in each stage
+     */
+    Result importFile(final Path file, final String dbName, final String collectionName) {
+        this.logger.entry(file, dbName, collectionName);
+
+        final MongoCollection<RawBsonDocument> collection = this.mongoClient.getDatabase(dbName).getCollection(collectionName, RawBsonDocument.class);
+        final BlockingQueue<Future<List<RawBsonDocument>>> parsed = new ArrayBlockingQueue<>(Math.max(1, this.maxInFlight) + this.parseWorkers);
+        final Future<List<RawBsonDocument>> endOfFile = CompletableFuture.completedFuture(null);
+        final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+        final var readNanos = new LongAdder();
+        final var parseNanos = new LongAdder();
+        final var insertNanos = new LongAdder();
+        final var lines = new LongAdder();
+        final var inserted = new LongAdder();
+        final var start = System.nanoTime();
+
+        final ExecutorService parsers = Executors.newFixedThreadPool(this.parseWorkers);
+
+        try (final var inserter = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory())) {
+            inserter.execute(() -> this.insert(collection, parsed, endOfFile, errors, insertNanos, inserted));
+
+            try (final var reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), this.bufferChars)) {
+                var lineNumber = 1L;
+                var chunk = new Chunk(lineNumber, new ArrayList<>(this.linesPerChunk));
+                var readStart = System.nanoTime();
+                String line;
+
+                while (errors.isEmpty() && (line = reader.readLine()) != null) {
+                    chunk.lines().add(line);
+                    lineNumber++;
+
+                    if (chunk.lines().size() == this.linesPerChunk) {
+                        readNanos.add(System.nanoTime() - readStart);
+                        lines.add(chunk.lines().size());
+
+                        final var full = chunk;
+
+                        parsed.put(parsers.submit(() -> this.parse(full, parseNanos)));
+
+                        chunk = new Chunk(lineNumber, new ArrayList<>(this.linesPerChunk));
+                        readStart = System.nanoTime();
+                    }
+                }
+
+                readNanos.add(System.nanoTime() - readStart);
+
+                if (!chunk.lines().isEmpty() && errors.isEmpty()) {
+                    lines.add(chunk.lines().size());
+
+                    final var last = chunk;
+
+                    parsed.put(parsers.submit(() -> this.parse(last, parseNanos)));
+                }
+            } catch (final IOException ioe) {
+                errors.add(new UncheckedIOException(ioe));
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+
+                errors.add(new RuntimeException("Interrupted reading " + file, ie));
+            } finally {
+                // The inserter finishes once it takes the end marker
+
+                try {
+                    parsed.put(endOfFile);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        if (!errors.isEmpty())
+            throw errors.peek();
+
+        final var result = new Result(inserted.sum(), System.nanoTime() - start, List.of(
+                new Stage("read", lines.sum(), readNanos.sum()),
+                new Stage("parse", lines.sum(), parseNanos.sum()),
+                new Stage("insert", inserted.sum(), insertNanos.sum())));
+
+        this.log("Imported", dbName + "." + collectionName, file, result);
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    private List<RawBsonDocument> parse(final Chunk chunk, final LongAdder parseNanos) {
+        final var parseStart = System.nanoTime();
+        final var decoderContext = DecoderContext.builder().build();
+        final List<RawBsonDocument> documents = new ArrayList<>(chunk.lines().size());
+
+        for (int i = 0; i < chunk.lines().size(); i++) {
+            final var line = chunk.lines().get(i);
+
+            if (line.isBlank())
+                continue;
+
+            try {
+                documents.add(CODEC.decode(new JsonReader(line), decoderContext));
+            } catch (final JsonParseException jpe) {
+                throw new IllegalArgumentException("Invalid JSON on line " + (chunk.firstLine() + i) + ": " + jpe.getMessage(), jpe);
+            }
+        }
+
+        parseNanos.add(System.nanoTime() - parseStart);
+
+        return documents;
+    }
+
+    /*
+     * Takes the parsed chunks in the order they were read; ordered
+     * inserts wait for each chunk, unordered ones keep up to
+     * maxInFlight going. After an error the remaining chunks are
+     * drained without being inserted.
+     */
+    private void insert(final MongoCollection<RawBsonDocument> collection,
+                        final BlockingQueue<Future<List<RawBsonDocument>>> parsed,
+                        final Future<List<RawBsonDocument>> endOfFile,
+                        final Queue<RuntimeException> errors,
+                        final LongAdder insertNanos,
+                        final LongAdder inserted) {
+        final var permits = new Semaphore(this.ordered ? 1 : Math.max(1, this.maxInFlight));
+        final var options = new InsertManyOptions().ordered(this.ordered);
+
+        try {
+            Future<List<RawBsonDocument>> next;
+
+            while ((next = parsed.take()) != endOfFile) {
+                final List<RawBsonDocument> documents;
+
+                try {
+                    documents = next.get();
+                } catch (final ExecutionException ee) {
+                    errors.add(ee.getCause() instanceof RuntimeException re ? re : new RuntimeException(ee.getCause()));
+
+                    continue;
+                }
+
+                if (!errors.isEmpty() || documents.isEmpty())
+                    continue;
+
+                permits.acquire();
+
+                final var insertStart = System.nanoTime();
+
+                final ObservableSubscriber<InsertManyResult> subscriber = new ObservableSubscriber<>(collection.getNamespace()) {
+                    @Override
+                    public void onComplete() {
+                        super.onComplete();
+
+                        if (this.getError() != null)
+                            errors.add(this.getError());
+                        else
+                            inserted.add(documents.size());
+
+                        insertNanos.add(System.nanoTime() - insertStart);
+                        permits.release();
+                    }
+                };
+
+                subscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
+                subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
+
+                collection.insertMany(documents, options).subscribe(subscriber.expiring());
+            }
+
+            if (!permits.tryAcquire(this.ordered ? 1 : Math.max(1, this.maxInFlight), this.timeoutSeconds, TimeUnit.SECONDS))
+                errors.add(new RuntimeException("Timed out waiting for inserts to complete"));
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            errors.add(new RuntimeException("Interrupted inserting", ie));
+        }
+    }
+
+    private void log(final String verb, final String namespace, final Path file, final Result result) {
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("{} {} document(s) between {} and {} in {} ms",
+                    verb,
+                    result.documents(),
+                    namespace,
+                    file,
+                    TimeUnit.NANOSECONDS.toMillis(result.nanos()));
+
+            for (final var stage : result.stages())
+                this.logger.info("  {}: {} item(s) in {} ms busy, {} per second",
+                        stage.name(),
+                        stage.items(),
+                        TimeUnit.NANOSECONDS.toMillis(stage.nanos()),
+                        String.format("%.0f", stage.itemsPerSecond()));
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)NearCache.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.time.Duration;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import org.bson.codecs.DocumentCodec;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * A bounded, process-wide read-through cache for find(...).first()
+ * point lookups. Entries are keyed by namespace, filter, projection
+ * and sort, with filters and projections rendered in a canonical form
+ * so that ones that differ only in the order of their fields share an
+ * entry. Entries are held as encoded BSON so that their size in bytes
+ * is known and no caller can modify a cached document.
+ *
+ * The least recently used entries are evicted once either the entry
+ * or the byte limit is exceeded, and every entry expires after the
+ * time to live. Every write made through a subscriber built for its
+ * namespace invalidates the whole namespace when it completes, since
+ * any update can change which document a cached filter matches;
+ * writes by other processes are not seen, which is what the time to
+ * live bounds. A lookup answered by a hedged read's hedge is returned
+ * but not cached, since it may come from a secondary that lags the
+ * primary and would otherwise be served stale for the whole time to
+ * live.
+ */
+final class NearCache {
+    private static final Set<String> FILTER_OPERATORS = Set.of("$and", "$or", "$nor", "$elemMatch");
+
+    private static volatile NearCache instance = new NearCache(false, 0, 0, Duration.ZERO);
+
+    private record Key(String namespace, String filter, String projection, String sort) {
+    }
+
+    private record Entry(RawBsonDocument document, long expiresAtNanos, long generation) {
+        int bytes() {
+            return this.document.getByteBuffer().remaining();
+        }
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> generations = new HashMap<>();
+    private final DocumentCodec codec = new DocumentCodec();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private long bytes;
+
+    NearCache(final boolean enabled, final int maxEntries, final long maxBytes, final Duration ttl) {
+        super();
+
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Replace the process-wide cache with one configured from the
+     * mongodb.cache properties.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        instance = new NearCache(Boolean.parseBoolean(properties.getProperty("mongodb.cache.enabled", "true")),
+                Integer.parseInt(properties.getProperty("mongodb.cache.maxEntries", "10000")),
+                Long.parseLong(properties.getProperty("mongodb.cache.maxBytes", "16777216")),
+                Duration.ofSeconds(Long.parseLong(properties.getProperty("mongodb.cache.ttlSeconds", "60"))));
+    }
+
+    static NearCache getInstance() {
+        return instance;
+    }
+
+    Document findFirst(final MongoCollection<Document> collection, final Bson filter) {
+        return this.findFirst(collection, filter, null, null);
+    }
+
+    /**
+     * The first document matching the filter, from the cache if it
+     * holds a live entry and otherwise from the server. Documents
+     * that are not found are not cached.
+     *
+     * @param   collection  The collection
+     * @param   filter      The filter
+     * @param   projection  The projection, or null
+     * @param   sort        The sort, or null
+     * @return              A copy of the document, or null
+     */
+    Document findFirst(final MongoCollection<Document> collection,
+                       final Bson filter,
+                       final Bson projection,
+                       final Bson sort) {
+        Trace.entry(this.logger, collection.getNamespace(), filter, projection, sort);
+
+        final var namespace = collection.getNamespace().getFullName();
+
+        if (!this.enabled) {
+            final var document = load(collection, filter, projection, sort).document();
+
+            Trace.exit(this.logger, document);
+
+            return document;
+        }
+
+        final var key = new Key(namespace,
+                canonical(filter),
+                canonical(projection),
+                sort == null ? "" : sort.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).toJson());
+
+        final long generation;
+
+        synchronized (this) {
+            final var entry = this.entries.get(key);
+
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAtNanos() < 0) {
+                    this.hits.increment();
+
+                    final var document = entry.document().decode(this.codec);
+
+                    Trace.exit(this.logger, document);
+
+                    return document;
+                }
+
+                this.remove(key);
+                this.expirations.increment();
+            }
+
+            this.misses.increment();
+
+            generation = this.generations.getOrDefault(namespace, 0L);
+        }
+
+        final var answer = load(collection, filter, projection, sort);
+        final var document = answer.document();
+
+        if (document != null && !answer.hedged()) {
+            final var raw = new RawBsonDocument(document, this.codec);
+
+            synchronized (this) {
+                // Drop the result if the namespace was written while it was loading
+
+                if (this.generations.getOrDefault(namespace, 0L) == generation)
+                    this.put(key, new Entry(raw, System.nanoTime() + this.ttlNanos, generation));
+            }
+        }
+
+        Trace.exit(this.logger, document);
+
+        return document;
+    }
+
+    /**
+     * Remove every entry of a namespace. Write subscribers call this
+     * when a write to the namespace completes.
+     *
+     * @param   namespace   The namespace
+     */
+    void invalidate(final MongoNamespace namespace) {
+        this.invalidate(namespace.getDatabaseName(), namespace.getCollectionName());
+    }
+
+    /**
+     * Remove every entry of a namespace.
+     *
+     * @param   dbName          The name of the database
+     * @param   collectionName  The name of the collection
+     */
+    void invalidate(final String dbName, final String collectionName) {
+        if (!this.enabled)
+            return;
+
+        final var namespace = dbName + "." + collectionName;
+
+        synchronized (this) {
+            this.generations.merge(namespace, 1L, Long::sum);
+
+            final var iterator = this.entries.entrySet().iterator();
+
+            while (iterator.hasNext()) {
+                final var entry = iterator.next();
+
+                if (entry.getKey().namespace().equals(namespace)) {
+                    this.bytes -= entry.getValue().bytes();
+
+                    iterator.remove();
+                }
+            }
+        }
+
+        this.invalidations.increment();
+    }
+
+    synchronized void clear() {
+        this.entries.keySet().forEach(key -> this.generations.merge(key.namespace(), 1L, Long::sum));
+        this.entries.clear();
+        this.bytes = 0;
+
+        this.invalidations.increment();
+    }
+
+    void logMetrics() {
+        final var lookups = this.hits.sum() + this.misses.sum();
+
+        final int size;
+        final long bytes;
+
+        synchronized (this) {
+            size = this.entries.size();
+            bytes = this.bytes;
+        }
+
+        this.logger.info("Near cache: {} hit(s), {} miss(es), hit rate {}, {} entries, {} bytes, {} eviction(s), {} expiration(s), {} invalidation(s)",
+                this.hits.sum(),
+                this.misses.sum(),
+                String.format("%.3f", lookups == 0 ? 0 : (double) this.hits.sum() / lookups),
+                size,
+                bytes,
+                this.evictions.sum(),
+                this.expirations.sum(),
+                this.invalidations.sum());
+    }
+
+    private void put(final Key key, final Entry entry) {
+        if (entry.bytes() > this.maxBytes)
+            return;
+
+        this.remove(key);
+
+        this.entries.put(key, entry);
+        this.bytes += entry.bytes();
+
+        final var iterator = this.entries.entrySet().iterator();
+
+        while ((this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) && iterator.hasNext()) {
+            final var eldest = iterator.next();
+
+            this.bytes -= eldest.getValue().bytes();
+
+            iterator.remove();
+
+            this.evictions.increment();
+        }
+    }
+
+    private void remove(final Key key) {
+        final var removed = this.entries.remove(key);
+
+        if (removed != null)
+            this.bytes -= removed.bytes();
+    }
+
+    private static HedgedReader.Answer load(final MongoCollection<Document> collection,
+                                            final Bson filter,
+                                            final Bson projection,
+                                            final Bson sort) {
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.LOOKUP);
+        final var hedgedReader = HedgedReader.getInstance();
+
+        if (hedgedReader.isEnabled()) {
+            final var event = OperationEvent.begin(collection.getNamespace(), "hedgedFindFirst", filter, 1);
+
+            HedgedReader.Answer answer = null;
+            RuntimeException failure = null;
+
+            try {
+                answer = hedgedReader.answer(HedgedReader.forFind(collection, filter, projection, sort, deadline), deadline);
+            } catch (final RuntimeException re) {
+                failure = re;
+
+                throw re;
+            } finally {
+                if (event != null)
+                    event.complete(List.of(), answer != null && answer.document() != null ? 1 : 0, failure);
+            }
+
+            return answer;
+        }
+
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+        subscriber.deadline(deadline);
+
+        collection.find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .projection(projection)
+                .sort(sort)
+                .first()
+                .subscribe(subscriber);
+
+        return new HedgedReader.Answer(subscriber.first(), false);
+    }
+
+    /*
+     * Render a filter or projection as JSON with the fields of filter
+     * documents and operator documents in name order. The fields of
+     * embedded documents used as values keep their order, because it
+     * is significant when comparing documents.
+     */
+    private static String canonical(final Bson bson) {
+        if (bson == null)
+            return "";
+
+        final var document = bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+
+        return canonical(document, true).asDocument().toJson();
+    }
+
+    private static BsonValue canonical(final BsonValue value, final boolean isFilter) {
+        if (value.isArray()) {
+            final var array = new BsonArray();
+
+            for (final var element : value.asArray())
+                array.add(canonical(element, isFilter));
+
+            return array;
+        }
+
+        if (!value.isDocument() || !(isFilter || isOperatorDocument(value.asDocument())))
+            return value;
+
+        final var sorted = new TreeMap<String, BsonValue>();
+
+        // The operands of $and, $or, $nor and $elemMatch are filters in their own right
+
+        value.asDocument().forEach((name, field) -> sorted.put(name, canonical(field, FILTER_OPERATORS.contains(name))));
+
+        final var result = new BsonDocument();
+
+        sorted.forEach(result::append);
+
+        return result;
+    }
+
+    private static boolean isOperatorDocument(final BsonDocument document) {
+        return !document.isEmpty() && document.keySet().stream().allMatch(name -> name.startsWith("$"));
+    }
+}
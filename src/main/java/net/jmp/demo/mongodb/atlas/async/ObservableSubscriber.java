@@ -1,6 +1,7 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)ObservableSubscriber.java 0.10.0  10/19/2026
  * (#)ObservableSubscriber.java 0.2.0   12/20/2023
  * (#)ObservableSubscriber.java 0.1.0   12/19/2023
  *
@@ -12,12 +13,12 @@ package net.jmp.demo.mongodb.atlas.async;
  * https://github.com/mongodb/mongo-java-driver/blob/master/driver-reactive-streams/src/examples/reactivestreams/helpers/SubscriberHelpers.java
  *
  * @author    Jonathan Parker
- * @version   0.2.0
+ * @version   0.10.0
  * @since     0.1.0
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -38,43 +39,92 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.MongoNamespace;
 import com.mongodb.MongoTimeoutException;
 
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import java.time.Duration;
+
 import java.util.ArrayList;
 import java.util.List;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.conversions.Bson;
+
 import static com.mongodb.internal.thread.InterruptionUtil.interruptAndCreateMongoInterruptedException;
 
 abstract class ObservableSubscriber<T> implements Subscriber<T> {
+    private static final ScheduledExecutorService EXPIRY = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+            .name("subscriber-deadlines")
+            .daemon()
+            .factory());
+
     private final List<T> received;
     private final List<RuntimeException> errors;
     private final CountDownLatch latch;
+    private final AdmissionControl.Budget budget;
+    private final MongoNamespace written;
     private volatile Subscription subscription;
     private volatile boolean completed;
+    private OperationEvent event;
+    private volatile Duration deadline;
+    private long startNanos;
+    private long deadlineNanos;
+    private ReadRouter.Metrics route;
+    private volatile AdmissionControl.Permit permit;
 
     ObservableSubscriber() {
+        this(AdmissionControl.Budget.READ);
+    }
+
+    ObservableSubscriber(final AdmissionControl.Budget budget) {
+        this(budget, null);
+    }
+
+    /*
+     * A write to the namespace. It is charged to the write budget and
+     * the namespace is invalidated in the near cache once the write
+     * has completed, failed or timed out, since a failed or abandoned
+     * write may still have changed documents. Writes in a transaction
+     * use the budget alone, and are invalidated once it commits.
+     */
+    ObservableSubscriber(final MongoNamespace written) {
+        this(AdmissionControl.Budget.WRITE, written);
+    }
+
+    private ObservableSubscriber(final AdmissionControl.Budget budget, final MongoNamespace written) {
         super();
 
+        this.budget = budget;
+        this.written = written;
         this.received = new ArrayList<>();
         this.errors = new ArrayList<>();
         this.latch = new CountDownLatch(1);
+        this.deadline = Deadlines.getInstance().of(budget == AdmissionControl.Budget.WRITE
+                ? Deadlines.Operation.WRITE
+                : Deadlines.Operation.DEFAULT);
     }
 
     @Override
     public void onSubscribe(final Subscription s) {
         this.subscription = s;
 
-        this.subscription.request(Integer.MAX_VALUE);
+        this.admit(s, Integer.MAX_VALUE);
     }
 
     @Override
     public void onNext(final T t) {
+        this.signal();
+
         this.received.add(t);
     }
 
@@ -91,11 +141,165 @@ abstract class ObservableSubscriber<T> implements Subscriber<T> {
 
     @Override
     public void onComplete() {
+        final var admitted = this.permit;
+
+        if (admitted != null) {
+            admitted.signal();
+            admitted.release(!this.errors.isEmpty());
+        }
+
+        this.invalidate();
+        this.record(this.getError());
+
         this.completed = true;
 
         this.latch.countDown();
     }
 
+    /**
+     * Record this operation as a Flight Recorder event when it
+     * completes. Call before subscribing.
+     *
+     * @param   namespace   The namespace operated on
+     * @param   operation   The name of the operation, such as find or bulkWrite
+     * @param   filter      The filter, or null
+     * @param   batchSize   The number of documents or models sent or requested per batch, or 0
+     * @return              This subscriber
+     */
+    ObservableSubscriber<T> recording(final MongoNamespace namespace,
+                                      final String operation,
+                                      final Bson filter,
+                                      final int batchSize) {
+        final var begun = OperationEvent.begin(namespace, operation, filter, batchSize);
+
+        synchronized (this) {
+            this.event = begun;
+        }
+
+        return this;
+    }
+
+    /**
+     * Charge this read's latency and outcome to a read route once it
+     * completes, fails or times out. Call before subscribing.
+     *
+     * @param   name    The name of the route the read was made on
+     * @return          This subscriber
+     */
+    ObservableSubscriber<T> routed(final String name) {
+        final var metrics = ReadRouter.getInstance().metrics(name);
+
+        synchronized (this) {
+            this.route = metrics;
+        }
+
+        return this;
+    }
+
+    /**
+     * Set how long the operation may take, from subscribing until
+     * await(), or for a subscriber that is never awaited the timer of
+     * expiring(), cancels the subscription and fails; waiting for
+     * admission counts against it. Writes default to the WRITE
+     * deadline and everything else to DEFAULT. Call before
+     * subscribing; the operation itself should be sent with the same
+     * maxTimeMS where it takes one.
+     *
+     * @param   deadline    The deadline
+     * @return              This subscriber
+     */
+    ObservableSubscriber<T> deadline(final Duration deadline) {
+        this.deadline = deadline;
+
+        return this;
+    }
+
+    /**
+     * This subscriber with its deadline enforced for a caller that
+     * never awaits it and learns of the outcome in onComplete. Once
+     * the deadline passes the subscription is cancelled and onError
+     * is called with a timeout; onComplete runs once either way.
+     * Subscribe the publisher to the subscriber returned.
+     *
+     * @return  The subscriber to subscribe
+     */
+    Subscriber<T> expiring() {
+        return new Expiring<>(this);
+    }
+
+    /*
+     * Nothing is sent to the server until the first request, so wait
+     * for admission before making it. A subscriber that is not
+     * admitted by its deadline fails without sending anything.
+     */
+    void admit(final Subscription s, final long n) {
+        try {
+            this.permit = AdmissionControl.getInstance().acquire(this.budget, this.deadlineNanos());
+        } catch (final RuntimeException re) {
+            s.cancel();
+
+            this.onError(re);
+
+            return;
+        }
+
+        s.request(n);
+    }
+
+    /* The first response feeds the latency the admission limit adapts to */
+
+    void signal() {
+        final var admitted = this.permit;
+
+        if (admitted != null)
+            admitted.signal();
+    }
+
+    /* The deadline is fixed by whichever comes first, subscribing or awaiting */
+
+    private synchronized long deadlineNanos() {
+        if (this.deadlineNanos == 0) {
+            this.startNanos = System.nanoTime();
+            this.deadlineNanos = this.startNanos + this.deadline.toNanos();
+        }
+
+        return this.deadlineNanos;
+    }
+
+    private void invalidate() {
+        if (this.written != null)
+            NearCache.getInstance().invalidate(this.written);
+    }
+
+    /* Complete the event and charge the route once, whether the publisher finished or await() gave up on it */
+
+    private void record(final Throwable failure) {
+        final OperationEvent recorded;
+        final ReadRouter.Metrics charged;
+        final long elapsedNanos;
+
+        synchronized (this) {
+            recorded = this.event;
+            charged = this.route;
+            elapsedNanos = System.nanoTime() - this.startNanos;
+
+            this.event = null;
+            this.route = null;
+        }
+
+        if (recorded != null)
+            recorded.complete(this.received, this.documentCount(), failure);
+
+        if (charged != null)
+            charged.complete(elapsedNanos, failure != null);
+    }
+
+    /* The number of documents delivered when it is not the size of the received list, otherwise -1 */
+
+    long documentCount() {
+        return -1;
+    }
+
     Subscription getSubscription() {
         return this.subscription;
     }
@@ -127,13 +331,31 @@ abstract class ObservableSubscriber<T> implements Subscriber<T> {
     }
 
     ObservableSubscriber<T> await() {
-        return this.await(60, TimeUnit.SECONDS);
+        return this.await(Math.max(0, this.deadlineNanos() - System.nanoTime()), TimeUnit.NANOSECONDS);
     }
 
     ObservableSubscriber<T> await(final long timeout, final TimeUnit unit) {
         try {
             if (!this.latch.await(timeout, unit)) {
-                throw new MongoTimeoutException("Publisher onComplete timed out");
+                // Stop the driver from requesting or delivering anything more
+
+                final var s = this.getSubscription();
+
+                if (s != null)
+                    s.cancel();
+
+                final var admitted = this.permit;
+
+                if (admitted != null)
+                    admitted.release(true);
+
+                this.invalidate();
+
+                final var timedOut = new MongoTimeoutException("Publisher onComplete timed out after " + unit.toMillis(timeout) + " ms");
+
+                this.record(timedOut);
+
+                throw timedOut;
             }
         } catch (final InterruptedException ie) {
             Thread.currentThread().interrupt();
@@ -147,4 +369,81 @@ abstract class ObservableSubscriber<T> implements Subscriber<T> {
 
         return this;
     }
+
+    /*
+     * Passes on the first terminal signal only, from the publisher or
+     * from the timer that fires at the subscriber's deadline
+     */
+    private static final class Expiring<T> implements Subscriber<T> {
+        private final ObservableSubscriber<T> subscriber;
+        private final AtomicBoolean terminated = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timer;
+
+        private Expiring(final ObservableSubscriber<T> subscriber) {
+            super();
+
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            // Admission is bounded by the same deadline, so start the timer once it is done
+
+            this.subscriber.onSubscribe(s);
+
+            // A subscriber that was not admitted has already failed
+
+            if (this.subscriber.completed) {
+                this.terminated.set(true);
+
+                return;
+            }
+
+            final var remaining = this.subscriber.deadlineNanos() - System.nanoTime();
+
+            this.timer = EXPIRY.schedule(() -> this.expire(s), Math.max(0, remaining), TimeUnit.NANOSECONDS);
+
+            if (this.terminated.get())
+                this.timer.cancel(false);
+        }
+
+        @Override
+        public void onNext(final T t) {
+            if (!this.terminated.get())
+                this.subscriber.onNext(t);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            if (this.terminate())
+                this.subscriber.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (this.terminate())
+                this.subscriber.onComplete();
+        }
+
+        private void expire(final Subscription s) {
+            if (this.terminated.compareAndSet(false, true)) {
+                s.cancel();
+
+                this.subscriber.onError(new MongoTimeoutException("Publisher onComplete timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis(this.subscriber.deadline.toNanos()) + " ms"));
+            }
+        }
+
+        private boolean terminate() {
+            if (!this.terminated.compareAndSet(false, true))
+                return false;
+
+            final var scheduled = this.timer;
+
+            if (scheduled != null)
+                scheduled.cancel(false);
+
+            return true;
+        }
+    }
 }
@@ -0,0 +1,195 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)OperationEvent.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.bulk.BulkWriteResult;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import org.bson.conversions.Bson;
+
+/**
+ * A Flight Recorder event for one database operation, from the moment
+ * its subscriber was set up until the publisher completed or failed or
+ * the wait for it timed out, in which case the timeout is the error.
+ * Recorded alongside the JVM's own events, it lines database latency up
+ * with garbage collection, thread and I/O activity:
+ *
+ * jcmd &lt;pid&gt; JFR.start name=mongo settings=profile
+ *
+ * While no recording is running begin() returns null and nothing else
+ * is done, so the filter shape is never rendered.
+ */
+@Name("net.jmp.demo.mongodb.Operation")
+@Label("MongoDB Operation")
+@Category({"MongoDB"})
+@Description("A database operation issued through an ObservableSubscriber")
+final class OperationEvent extends Event {
+    private static final BsonString PLACEHOLDER = new BsonString("?");
+
+    @Label("Namespace")
+    String namespace;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Filter Shape")
+    @Description("The filter with every value replaced by ?")
+    String filterShape;
+
+    @Label("Documents")
+    @Description("Documents returned, inserted, modified or deleted")
+    long documents;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * Start timing an operation, if events of this type are being recorded.
+     *
+     * @param   namespace   The namespace operated on
+     * @param   operation   The name of the operation, such as find or bulkWrite
+     * @param   filter      The filter, or null
+     * @param   batchSize   The number of documents or models sent or requested per batch, or 0
+     * @return              The started event, or null when not recording
+     */
+    static OperationEvent begin(final MongoNamespace namespace,
+                                final String operation,
+                                final Bson filter,
+                                final int batchSize) {
+        final var event = new OperationEvent();
+
+        if (!event.isEnabled())
+            return null;
+
+        event.namespace = namespace.getFullName();
+        event.operation = operation;
+        event.filterShape = filter == null
+                ? null
+                : shape(filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry())).asDocument().toJson();
+        event.batchSize = batchSize;
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * Stop timing and commit the event.
+     *
+     * @param   received    What the publisher delivered
+     * @param   documents   The number of documents delivered if known, otherwise -1
+     * @param   failure     The error the operation failed with, or null
+     */
+    void complete(final List<?> received, final long documents, final Throwable failure) {
+        this.end();
+
+        if (this.shouldCommit()) {
+            this.documents = documents >= 0 ? documents : count(received);
+            this.error = failure == null ? null : failure.toString();
+
+            this.commit();
+        }
+    }
+
+    /*
+     * A write delivers one result describing what it changed; a read
+     * delivers the documents themselves
+     */
+    private static long count(final List<?> received) {
+        if (received.size() == 1) {
+            final var result = received.get(0);
+
+            if (result instanceof BulkWriteResult bulk)
+                return bulk.wasAcknowledged()
+                        ? bulk.getInsertedCount() + bulk.getModifiedCount() + bulk.getDeletedCount() + bulk.getUpserts().size()
+                        : 0;
+
+            if (result instanceof InsertManyResult insertMany)
+                return insertMany.getInsertedIds().size();
+
+            if (result instanceof InsertOneResult)
+                return 1;
+
+            if (result instanceof UpdateResult update)
+                return update.wasAcknowledged() ? update.getModifiedCount() + (update.getUpsertedId() != null ? 1 : 0) : 0;
+
+            if (result instanceof DeleteResult delete)
+                return delete.wasAcknowledged() ? delete.getDeletedCount() : 0;
+        }
+
+        return received.size();
+    }
+
+    private static BsonValue shape(final BsonValue value) {
+        if (value.isDocument()) {
+            final var shaped = new BsonDocument();
+
+            value.asDocument().forEach((key, field) -> shaped.append(key, shape(field)));
+
+            return shaped;
+        }
+
+        // Keep the structure of $and and $or lists, not the contents of $in lists
+
+        if (value.isArray() && !value.asArray().isEmpty() && value.asArray().get(0).isDocument()) {
+            final var shaped = new BsonArray();
+
+            value.asArray().forEach(element -> shaped.add(shape(element)));
+
+            return shaped;
+        }
+
+        return PLACEHOLDER;
+    }
+}
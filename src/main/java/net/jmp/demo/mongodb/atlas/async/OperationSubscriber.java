@@ -1,6 +1,7 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)OperationSubscriber.java  0.10.0  10/19/2026
  * (#)OperationSubscriber.java  0.2.0   12/20/2023
  *
  * For the purposes of learning and developing this
@@ -11,12 +12,12 @@ package net.jmp.demo.mongodb.atlas.async;
  * https://github.com/mongodb/mongo-java-driver/blob/master/driver-reactive-streams/src/examples/reactivestreams/helpers/SubscriberHelpers.java
  *
  * @author    Jonathan Parker
- * @version   0.2.0
+ * @version   0.10.0
  * @since     0.2.0
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -37,8 +38,18 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import com.mongodb.MongoNamespace;
+
 final class OperationSubscriber<T> extends ObservableSubscriber<T> {
     OperationSubscriber() {
         super();
     }
+
+    OperationSubscriber(final AdmissionControl.Budget budget) {
+        super(budget);
+    }
+
+    OperationSubscriber(final MongoNamespace written) {
+        super(written);
+    }
 }
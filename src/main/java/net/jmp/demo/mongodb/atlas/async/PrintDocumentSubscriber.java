@@ -1,6 +1,7 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)PrintDocumentSubscriber.java  0.10.0  10/19/2026
  * (#)PrintDocumentSubscriber.java  0.1.0   12/19/2023
  *
  * For the purposes of learning and developing this
@@ -11,12 +12,12 @@ package net.jmp.demo.mongodb.atlas.async;
  * https://github.com/mongodb/mongo-java-driver/blob/master/driver-reactive-streams/src/examples/reactivestreams/helpers/SubscriberHelpers.java
  *
  * @author    Jonathan Parker
- * @version   0.1.0
+ * @version   0.10.0
  * @since     0.1.0
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -37,12 +38,66 @@ package net.jmp.demo.mongodb.atlas.async;
  * SOFTWARE.
  */
 
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.bson.Document;
 
+import org.reactivestreams.Subscription;
+
 import org.slf4j.ext.XLogger;
 
+/**
+ * Logs each document as it arrives, through the asynchronous printer
+ * so that the driver's threads are not held up by the appender. The
+ * documents are requested in chunks, and the next chunk only once the
+ * printer has written the last, so a fast cursor waits in the driver
+ * rather than filling the printer's buffer.
+ */
 public class PrintDocumentSubscriber extends ConsumerSubscriber<Document> {
+    private static final int CHUNK = 64;
+
+    private final AtomicLong written = new AtomicLong();
+    private final Object demandLock = new Object();
+    private volatile Subscription chunkedSubscription;
+
     public PrintDocumentSubscriber(final XLogger logger) {
-        super((document -> logger.info(document.toJson())));
+        super(document -> { });
+
+        this.setConsumer(document -> AsyncDocumentPrinter.getInstance().print(logger, document, this::written));
+    }
+
+    @Override
+    public void onSubscribe(final Subscription s) {
+        this.chunkedSubscription = s;
+
+        this.admit(s, CHUNK);
+    }
+
+    @Override
+    Subscription getSubscription() {
+        return this.chunkedSubscription;
+    }
+
+    /* Runs on the printer's thread, or the driver's for a dropped document; requests are kept serial */
+
+    private void written() {
+        if (this.written.incrementAndGet() % CHUNK == 0) {
+            synchronized (this.demandLock) {
+                this.chunkedSubscription.request(CHUNK);
+            }
+        }
+    }
+
+    /* Flush so that what the caller logs next follows the documents */
+
+    @Override
+    ObservableSubscriber<Document> await(final long timeout, final TimeUnit unit) {
+        try {
+            return super.await(timeout, unit);
+        } finally {
+            AsyncDocumentPrinter.getInstance().flush(timeout, unit);
+        }
     }
 }
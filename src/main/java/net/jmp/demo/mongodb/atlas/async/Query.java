@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Query.java 0.10.0  10/19/2026
  * (#)Bulk.java 0.7.0   01/12/2024
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.7.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -34,7 +35,6 @@ import com.mongodb.MongoBulkWriteException;
 
 import com.mongodb.client.model.*;
 
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 
 import com.mongodb.reactivestreams.client.MongoClient;
@@ -43,6 +43,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import java.util.concurrent.TimeUnit;
+
 import org.bson.Document;
 
 import org.bson.conversions.Bson;
@@ -55,6 +57,7 @@ final class Query {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final ChunkedDelete chunkedDelete;
 
     private final Bson projectionFields = Projections.fields(
             Projections.include("color", "qty", "vendor", "rating"),
@@ -76,6 +79,8 @@ final class Query {
 
         this.dbName = properties.getProperty("mongodb.query.db", "training");
         this.collectionName = properties.getProperty("mongodb.query.collection", "colors");
+
+        this.chunkedDelete = new ChunkedDelete(properties, mongoClient, this.dbName, this.collectionName);
     }
 
     void run() {
@@ -117,7 +122,9 @@ final class Query {
 
         jsonDocuments.forEach(jsonDocument -> documents.add(Document.parse(jsonDocument)));
 
-        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
 
         collection.insertMany(documents).subscribe(subscriber);
 
@@ -144,7 +151,7 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
         final var filter = Filters.gt("qty", 7);
 
         final var sort = Sorts.orderBy(
@@ -152,10 +159,16 @@ final class Query {
                 Sorts.ascending("color")
         );
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("comparisonOperators");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(sort)
                 .subscribe(subscriber);
@@ -172,7 +185,7 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
 
         final var filter = Filters.and(
                 Filters.lte("qty", 5),
@@ -184,10 +197,16 @@ final class Query {
                 Sorts.ascending("color")
         );
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("logicalOperators");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(sort)
                 .subscribe(subscriber);
@@ -213,13 +232,19 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
         final var filter = Filters.size("vendor", 3);   // 3 elements in the array
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("arraySizeOperator");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(Sorts.ascending("color"))
                 .subscribe(subscriber);
@@ -236,13 +261,19 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
         final var filter = Filters.eq("vendor", "A");
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("arrayValueOperator");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(Sorts.ascending("color"))
                 .subscribe(subscriber);
@@ -259,13 +290,19 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
         final var filter = Filters.exists("rating");
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("elementOperators");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(Sorts.ascending("rating"))
                 .subscribe(subscriber);
@@ -282,13 +319,19 @@ final class Query {
         this.logger.entry();
 
         final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
+        final var collection = ReadRouter.getInstance().route("query", database.getCollection(this.collectionName));
         final var filter = Filters.regex("color", "k$");
 
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.QUERY);
         final var subscriber = new DocumentPrinter("evaluationOperators");
 
+        subscriber.recording(collection.getNamespace(), "find", filter, 0);
+        subscriber.routed("query");
+        subscriber.deadline(deadline);
+
         collection
                 .find(filter)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
                 .projection(this.projectionFields)
                 .sort(Sorts.ascending("color"))
                 .subscribe(subscriber);
@@ -304,21 +347,7 @@ final class Query {
     private void deleteData() {
         this.logger.entry();
 
-        final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
-        final var filter = Filters.empty();
-
-        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>();
-
-        collection.deleteMany(filter).subscribe(subscriber);
-
-        subscriber.await();
-
-        if (subscriber.getError() == null) {
-            this.logger.info("{} document(s) were deleted", subscriber.first().getDeletedCount());
-        } else {
-            this.logger.error(subscriber.getError().getMessage());
-        }
+        this.chunkedDelete.deleteAll();
 
         this.logger.exit();
     }
@@ -0,0 +1,217 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ReadRouter.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
+
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Routes each class of read to the members and consistency it needs.
+ * A route is named by the operation class using it and configured from
+ * the mongodb.route.&lt;name&gt; properties: readPreference, an optional
+ * maxStalenessSeconds (at least 90) for non-primary preferences, and
+ * readConcern. Analytics can then go to secondaries that are no more
+ * than a bounded time behind, while flows that read their own writes
+ * stay on the primary.
+ *
+ * A name with no route leaves the collection's URI defaults in place.
+ * Every routed operation is counted against its route, and one whose
+ * subscriber names the route (see ObservableSubscriber.routed) also
+ * has its latency and any failure, including a timeout, charged to it.
+ */
+final class ReadRouter {
+    /**
+     * The reads made on one route.
+     */
+    static final class Metrics {
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Charge one finished read to the route.
+         *
+         * @param   elapsedNanos    How long the read took
+         * @param   failure         True if the read failed or timed out
+         */
+        void complete(final long elapsedNanos, final boolean failure) {
+            this.completed.increment();
+            this.nanos.add(elapsedNanos);
+            this.maxNanos.accumulate(elapsedNanos);
+
+            if (failure)
+                this.failed.increment();
+        }
+    }
+
+    private record Route(String name, ReadPreference readPreference, ReadConcern readConcern, Metrics metrics) {
+        <T> MongoCollection<T> apply(final MongoCollection<T> collection) {
+            var routed = collection;
+
+            if (this.readPreference != null)
+                routed = routed.withReadPreference(this.readPreference);
+
+            if (this.readConcern != null)
+                routed = routed.withReadConcern(this.readConcern);
+
+            return routed;
+        }
+    }
+
+    private static volatile ReadRouter instance = new ReadRouter(new Properties());
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final Map<String, Route> routes = new LinkedHashMap<>();
+    private final Route defaultRoute = new Route("default", null, null, new Metrics());
+
+    ReadRouter(final Properties properties) {
+        super();
+
+        final List<String> names = Arrays.stream(properties.getProperty("mongodb.route.names", "").split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .toList();
+
+        for (final var name : names)
+            this.routes.put(name, route(properties, name));
+    }
+
+    /**
+     * Replace the process-wide router with one configured from the
+     * mongodb.route properties.
+     *
+     * @param   properties  The application properties
+     */
+    static void configure(final Properties properties) {
+        instance = new ReadRouter(properties);
+    }
+
+    static ReadRouter getInstance() {
+        return instance;
+    }
+
+    /**
+     * The collection with the read preference and read concern of a
+     * route applied. Call once per operation, since each call is
+     * counted as one read on the route.
+     *
+     * @param   <T>         The type of document
+     * @param   name        The name of the route
+     * @param   collection  The collection
+     * @return              The routed collection
+     */
+    <T> MongoCollection<T> route(final String name, final MongoCollection<T> collection) {
+        final var route = this.routes.getOrDefault(name, this.defaultRoute);
+
+        route.metrics().reads.increment();
+
+        return route.apply(collection);
+    }
+
+    /**
+     * The metrics of a route, to charge reads made on it to.
+     *
+     * @param   name    The name of the route
+     * @return          The metrics
+     */
+    Metrics metrics(final String name) {
+        return this.routes.getOrDefault(name, this.defaultRoute).metrics();
+    }
+
+    void logMetrics() {
+        if (this.logger.isInfoEnabled()) {
+            for (final var route : this.routes.values())
+                this.logRoute(route);
+
+            this.logRoute(this.defaultRoute);
+        }
+    }
+
+    private void logRoute(final Route route) {
+        final var metrics = route.metrics();
+        final var completed = metrics.completed.sum();
+
+        if (metrics.reads.sum() > 0)
+            this.logger.info("Route {}: {} read(s), {} timed, {} failed, mean {} ms, max {} ms, read preference {}, read concern {}",
+                    route.name(),
+                    metrics.reads.sum(),
+                    completed,
+                    metrics.failed.sum(),
+                    String.format("%.1f", completed > 0 ? metrics.nanos.sum() / 1e6 / completed : 0.0),
+                    String.format("%.1f", metrics.maxNanos.get() / 1e6),
+                    route.readPreference() == null ? "default" : route.readPreference(),
+                    route.readConcern() == null ? "default" : route.readConcern().asDocument().toJson());
+    }
+
+    private static Route route(final Properties properties, final String name) {
+        final var prefix = "mongodb.route." + name + ".";
+        final var preferenceName = properties.getProperty(prefix + "readPreference");
+        final var maxStalenessSeconds = Long.parseLong(properties.getProperty(prefix + "maxStalenessSeconds", "0"));
+        final var concernLevel = properties.getProperty(prefix + "readConcern");
+
+        ReadPreference readPreference = null;
+
+        if (preferenceName != null) {
+            readPreference = maxStalenessSeconds > 0
+                    ? ReadPreference.valueOf(preferenceName, List.of(), maxStalenessSeconds, TimeUnit.SECONDS)
+                    : ReadPreference.valueOf(preferenceName);
+        } else if (maxStalenessSeconds > 0) {
+            throw new IllegalArgumentException("Route " + name + " sets maxStalenessSeconds without a readPreference");
+        }
+
+        final var readConcern = concernLevel == null || concernLevel.equalsIgnoreCase("default")
+                ? null
+                : new ReadConcern(ReadConcernLevel.fromString(concernLevel));
+
+        return new Route(name, readPreference, readConcern, new Metrics());
+    }
+}
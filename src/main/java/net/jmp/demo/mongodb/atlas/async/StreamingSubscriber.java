@@ -0,0 +1,132 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)StreamingSubscriber.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import java.util.function.Consumer;
+
+import org.reactivestreams.Subscription;
+
+/**
+ * A subscriber that hands each item to a consumer without retaining
+ * it and requests at most batchSize items at a time, so a large
+ * result streams at a steady memory cost. It also records when the
+ * first item arrived and when the stream was drained.
+ */
+final class StreamingSubscriber<T> extends ObservableSubscriber<T> {
+    /**
+     * Client-side timings of one stream. The time to the first item
+     * is dominated by server compute, the rest by transfer and the
+     * consumer.
+     */
+    record Timings(long items, long timeToFirstItemNanos, long totalNanos) {
+        long drainNanos() {
+            return this.totalNanos - this.timeToFirstItemNanos;
+        }
+    }
+
+    private final int batchSize;
+    private final Consumer<T> consumer;
+    private final long startNanos;
+    private volatile Subscription streamSubscription;
+    private volatile long firstItemNanos;
+    private volatile long completeNanos;
+    private long items;
+
+    StreamingSubscriber(final int batchSize, final Consumer<T> consumer) {
+        super();
+
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+
+        this.batchSize = batchSize;
+        this.consumer = consumer;
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onSubscribe(final Subscription s) {
+        this.streamSubscription = s;
+
+        this.admit(s, this.batchSize);
+    }
+
+    @Override
+    public void onNext(final T item) {
+        // Items already in flight when a failed consumer cancelled are dropped
+
+        if (this.getError() != null)
+            return;
+
+        this.signal();
+
+        if (this.items++ == 0)
+            this.firstItemNanos = System.nanoTime();
+
+        try {
+            this.consumer.accept(item);
+        } catch (final RuntimeException re) {
+            this.streamSubscription.cancel();
+            this.onError(re);
+
+            return;
+        }
+
+        // Ask for the next batch only once this one has been consumed
+
+        if (this.items % this.batchSize == 0)
+            this.streamSubscription.request(this.batchSize);
+    }
+
+    @Override
+    public void onComplete() {
+        this.completeNanos = System.nanoTime();
+
+        super.onComplete();
+    }
+
+    @Override
+    long documentCount() {
+        return this.items;
+    }
+
+    @Override
+    Subscription getSubscription() {
+        return this.streamSubscription;
+    }
+
+    Timings getTimings() {
+        final var end = this.completeNanos != 0 ? this.completeNanos : System.nanoTime();
+        final var first = this.firstItemNanos != 0 ? this.firstItemNanos : end;
+
+        return new Timings(this.items, first - this.startNanos, end - this.startNanos);
+    }
+}
@@ -0,0 +1,320 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)TimeSeries.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.bulk.BulkWriteResult;
+
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.TimeSeriesGranularity;
+
+import com.mongodb.client.result.InsertManyResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Ingests sensor measurements into a native time-series collection
+ * and rolls them up into fixed time windows per sensor. The windows
+ * are kept in a collection clustered on their {sensor, window} _id.
+ */
+final class TimeSeries {
+    static final String TIME = "time";
+    static final String META = "sensor";
+    static final String VALUE = "value";
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final String rollupsName;
+    private final TimeSeriesGranularity granularity;
+    private final Duration expireAfter;
+    private final int batchSize;
+    private final int sensors;
+    private final int measurements;
+    private final String windowUnit;
+    private final int windowSize;
+
+    TimeSeries(final Properties properties, final MongoClient mongoClient) {
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.dbName = properties.getProperty("mongodb.timeseries.db", "training");
+        this.collectionName = properties.getProperty("mongodb.timeseries.collection", "measurements");
+        this.rollupsName = properties.getProperty("mongodb.timeseries.rollups", "measurements_rollups");
+        this.granularity = TimeSeriesGranularity.valueOf(properties.getProperty("mongodb.timeseries.granularity", "seconds").toUpperCase(Locale.ROOT));
+        this.expireAfter = Duration.ofDays(Long.parseLong(properties.getProperty("mongodb.timeseries.expireAfterDays", "30")));
+        this.batchSize = Integer.parseInt(properties.getProperty("mongodb.timeseries.batchSize", "1000"));
+        this.sensors = Integer.parseInt(properties.getProperty("mongodb.timeseries.sensors", "4"));
+        this.measurements = Integer.parseInt(properties.getProperty("mongodb.timeseries.measurements", "1000"));
+        this.windowUnit = properties.getProperty("mongodb.timeseries.window.unit", "minute");
+        this.windowSize = Integer.parseInt(properties.getProperty("mongodb.timeseries.window.size", "5"));
+    }
+
+    void run() {
+        this.logger.entry();
+        this.logger.info("Beginning time-series operations...");
+
+        final var collections = new Collections(this.mongoClient);
+
+        // Only the collections created here are dropped afterwards
+
+        var createdMeasurements = false;
+        var createdRollups = false;
+
+        try {
+            createdMeasurements = collections.ensureTimeSeriesCollection(this.dbName,
+                    this.collectionName,
+                    TIME,
+                    META,
+                    this.granularity,
+                    this.expireAfter);
+
+            createdRollups = collections.ensureClusteredCollection(this.dbName, this.rollupsName, null);
+
+            final var to = Instant.now();
+            final var from = to.minusSeconds(this.measurements);
+
+            this.ingest(this.generate(from));
+
+            final var windows = this.rollup(from, to);
+
+            windows.forEach(window -> this.logger.info("Window: {}", window.toJson()));
+
+            this.store(windows);
+        } catch (final RuntimeException re) {
+            this.logger.error(re.getMessage());
+        } finally {
+            if (createdMeasurements)
+                collections.dropCollection(this.dbName, this.collectionName);
+
+            if (createdRollups)
+                collections.dropCollection(this.dbName, this.rollupsName);
+        }
+
+        this.logger.info("Ending time-series operations...");
+        this.logger.exit();
+    }
+
+    /**
+     * Insert measurements in unordered batches; the server may then
+     * spread a batch over its buckets in any order.
+     *
+     * @param   documents   The measurements
+     * @return              The number of measurements inserted
+     */
+    long ingest(final List<Document> documents) {
+        this.logger.entry(documents.size());
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var options = new InsertManyOptions().ordered(false);
+        final var startNanos = System.nanoTime();
+
+        long inserted = 0;
+
+        for (int i = 0; i < documents.size(); i += this.batchSize) {
+            final var batch = documents.subList(i, Math.min(i + this.batchSize, documents.size()));
+
+            final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "insertMany", null, batch.size());
+            subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
+
+            collection.insertMany(batch, options).subscribe(subscriber);
+
+            inserted += subscriber.first().getInsertedIds().size();
+        }
+
+        final var seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        this.logger.info("Ingested {} measurement(s) in {} s ({} per second)",
+                inserted,
+                String.format("%.3f", seconds),
+                String.format("%.0f", seconds > 0 ? inserted / seconds : 0));
+
+        this.logger.exit(inserted);
+
+        return inserted;
+    }
+
+    /**
+     * The minimum, maximum, average and count of the measurements of
+     * each sensor in each window of the range.
+     *
+     * @param   from    The inclusive start of the range
+     * @param   to      The exclusive end of the range
+     * @return          One document per sensor and window
+     */
+    List<Document> rollup(final Instant from, final Instant to) {
+        this.logger.entry(from, to);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+        final var pipeline = windowedRollup(TIME, META, VALUE, from, to, this.windowUnit, this.windowSize);
+
+        final var deadline = Deadlines.getInstance().of(Deadlines.Operation.AGGREGATE);
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+
+        subscriber.recording(collection.getNamespace(), "aggregate", null, 0);
+        subscriber.deadline(deadline);
+
+        collection.aggregate(pipeline)
+                .maxTime(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .subscribe(subscriber);
+
+        final var windows = subscriber.get();
+
+        this.logger.exit(windows);
+
+        return windows;
+    }
+
+    /**
+     * Save the windows, replacing any earlier copy of a window. Each
+     * _id is {sensor, window}, so the clustered collection keeps the
+     * windows of a sensor next to each other in time order.
+     *
+     * @param   windows The windows from rollup
+     * @return          The number of windows saved
+     */
+    int store(final List<Document> windows) {
+        this.logger.entry(windows.size());
+
+        var result = 0;
+
+        if (!windows.isEmpty()) {
+            final var database = this.mongoClient.getDatabase(this.dbName);
+            final var collection = database.getCollection(this.rollupsName);
+
+            final List<ReplaceOneModel<Document>> replacements = new ArrayList<>(windows.size());
+
+            for (final var window : windows)
+                replacements.add(new ReplaceOneModel<>(Filters.eq("_id", window.get("_id")), window, new ReplaceOptions().upsert(true)));
+
+            final ObservableSubscriber<BulkWriteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            subscriber.recording(collection.getNamespace(), "bulkWrite", null, replacements.size());
+            subscriber.deadline(Deadlines.getInstance().of(Deadlines.Operation.BULK));
+
+            collection.bulkWrite(replacements, new BulkWriteOptions().ordered(false)).subscribe(subscriber);
+
+            final var bulkWriteResult = subscriber.first();
+
+            result = bulkWriteResult.getUpserts().size() + bulkWriteResult.getMatchedCount();
+        }
+
+        this.logger.exit(result);
+
+        return result;
+    }
+
+    /**
+     * A pipeline that groups the measurements in [from, to) by series
+     * and by window, truncating each time to a multiple of size units
+     * ("second", "minute", "hour", "day" ...). The match on the time
+     * field lets a time-series collection skip whole buckets.
+     *
+     * @param   timeField   The time field
+     * @param   metaField   The series field
+     * @param   valueField  The measured field
+     * @param   from        The inclusive start of the range
+     * @param   to          The exclusive end of the range
+     * @param   unit        The window unit
+     * @param   size        The number of units in a window
+     * @return              The pipeline
+     */
+    static List<Bson> windowedRollup(final String timeField,
+                                     final String metaField,
+                                     final String valueField,
+                                     final Instant from,
+                                     final Instant to,
+                                     final String unit,
+                                     final int size) {
+        final var window = new Document("$dateTrunc", new Document("date", "$" + timeField)
+                .append("unit", unit)
+                .append("binSize", size));
+
+        return List.of(
+                Aggregates.match(Filters.and(
+                        Filters.gte(timeField, Date.from(from)),
+                        Filters.lt(timeField, Date.from(to))
+                )),
+                Aggregates.group(new Document(metaField, "$" + metaField).append("window", window),
+                        Accumulators.min("min", "$" + valueField),
+                        Accumulators.max("max", "$" + valueField),
+                        Accumulators.avg("avg", "$" + valueField),
+                        Accumulators.sum("count", 1)),
+                Aggregates.sort(Sorts.ascending("_id.window", "_id." + metaField))
+        );
+    }
+
+    private List<Document> generate(final Instant from) {
+        final var random = ThreadLocalRandom.current();
+        final List<Document> documents = new ArrayList<>(this.measurements);
+
+        for (int i = 0; i < this.measurements; i++) {
+            documents.add(new Document(TIME, Date.from(from.plusSeconds(i)))
+                    .append(META, "sensor-" + (i % this.sensors))
+                    .append(VALUE, 20 + random.nextGaussian() * 2));
+        }
+
+        return documents;
+    }
+}
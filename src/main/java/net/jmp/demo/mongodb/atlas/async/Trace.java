@@ -0,0 +1,111 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)Trace.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Entry and exit tracing for the methods that run once per document,
+ * claim or lookup: those of NearCache, ClaimEngine, VersionedUpdater,
+ * BucketedSeries, ArrayUpdateBatch and HedgedReader.answer. Every other
+ * class runs each method once per demonstration and keeps calling
+ * XLogger.entry and exit directly; only the classes named here are
+ * worth the extra overloads.
+ *
+ * XLogger.entry takes varargs, so every call allocates an array before
+ * the logger gets to check the level. These overloads have a fixed
+ * arity and do nothing unless the app.trace system property was true
+ * at startup. The int and boolean overloads keep the primitives these
+ * classes trace from being boxed at the call site. Arguments are still
+ * evaluated by the caller, so a call that computes an argument (or
+ * passes a primitive type without an overload here) still pays for it
+ * when tracing is off; the JIT may remove that work but is not
+ * guaranteed to.
+ *
+ * Run with -Dapp.trace=true and the TRACE level to see the traces.
+ */
+final class Trace {
+    static final boolean ENABLED = Boolean.getBoolean("app.trace");
+
+    private Trace() {
+        super();
+    }
+
+    static void entry(final XLogger logger) {
+        if (ENABLED)
+            logger.entry();
+    }
+
+    static void entry(final XLogger logger, final Object argument) {
+        if (ENABLED)
+            logger.entry(argument);
+    }
+
+    static void entry(final XLogger logger, final Object first, final Object second) {
+        if (ENABLED)
+            logger.entry(first, second);
+    }
+
+    static void entry(final XLogger logger, final Object first, final int second) {
+        if (ENABLED)
+            logger.entry(first, second);
+    }
+
+    static void entry(final XLogger logger, final Object first, final Object second, final Object third) {
+        if (ENABLED)
+            logger.entry(first, second, third);
+    }
+
+    static void entry(final XLogger logger, final Object first, final Object second, final Object third, final Object fourth) {
+        if (ENABLED)
+            logger.entry(first, second, third, fourth);
+    }
+
+    static void exit(final XLogger logger) {
+        if (ENABLED)
+            logger.exit();
+    }
+
+    static boolean exit(final XLogger logger, final boolean result) {
+        if (ENABLED)
+            logger.exit(result);
+
+        return result;
+    }
+
+    static <T> T exit(final XLogger logger, final T result) {
+        if (ENABLED)
+            logger.exit(result);
+
+        return result;
+    }
+}
@@ -0,0 +1,459 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)TransactionExecutor.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadConcern;
+import com.mongodb.TransactionOptions;
+import com.mongodb.WriteConcern;
+
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Runs units of work in multi-document transactions, retrying the
+ * whole transaction on a TransientTransactionError and the commit
+ * alone on an UnknownTransactionCommitResult, until a time limit.
+ * This is the loop the synchronous driver's withTransaction runs,
+ * which the reactive ClientSession does not offer.
+ *
+ * Small operations can be submitted and flushed later; they are then
+ * grouped into transactions of a bounded size.
+ *
+ * The executor only sees a TransactionSession, so it runs equally
+ * against MongoDB (forMongoClient) and against the in-process
+ * LocalTransactionStore, which can inject both kinds of error.
+ *
+ * @param   <S> The handle that operations use to take part in the transaction
+ */
+final class TransactionExecutor<S> {
+    interface TransactionSession<S> extends AutoCloseable {
+        S getHandle();
+
+        void startTransaction();
+
+        void commitTransaction();
+
+        void abortTransaction();
+
+        @Override
+        void close();
+    }
+
+    interface SessionFactory<S> {
+        TransactionSession<S> open();
+    }
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final SessionFactory<S> sessionFactory;
+    private final int maxOperationsPerTransaction;
+    private final Duration timeLimit;
+    private final List<Consumer<S>> pending = new ArrayList<>();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final LongAdder transactionRetries = new LongAdder();
+    private final LongAdder commitRetries = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAccumulator maxCommitNanos = new LongAccumulator(Long::max, 0);
+
+    TransactionExecutor(final SessionFactory<S> sessionFactory,
+                        final int maxOperationsPerTransaction,
+                        final Duration timeLimit) {
+        super();
+
+        if (maxOperationsPerTransaction <= 0)
+            throw new IllegalArgumentException("The operations per transaction must be positive: " + maxOperationsPerTransaction);
+
+        this.sessionFactory = sessionFactory;
+        this.maxOperationsPerTransaction = maxOperationsPerTransaction;
+        this.timeLimit = timeLimit;
+    }
+
+    static SessionFactory<ClientSession> forMongoClient(final MongoClient mongoClient) {
+        return () -> new MongoTransactionSession(mongoClient);
+    }
+
+    /**
+     * Queue an operation to run in a later transaction.
+     *
+     * @param   operation   The operation
+     */
+    synchronized void submit(final Consumer<S> operation) {
+        this.pending.add(operation);
+
+        if (this.pending.size() >= this.maxOperationsPerTransaction)
+            this.flush();
+    }
+
+    /**
+     * Run all queued operations, at most maxOperationsPerTransaction
+     * of them per transaction. A batch is taken off the queue before
+     * it runs, so one that fails for good is not run again; its
+     * exception is thrown and the batches after it stay queued.
+     */
+    synchronized void flush() {
+        this.logger.entry();
+
+        while (!this.pending.isEmpty()) {
+            final var head = this.pending.subList(0, Math.min(this.pending.size(), this.maxOperationsPerTransaction));
+            final List<Consumer<S>> batch = new ArrayList<>(head);
+
+            head.clear();
+
+            this.execute(handle -> batch.forEach(operation -> operation.accept(handle)));
+        }
+
+        this.logger.exit();
+    }
+
+    /**
+     * Run the work in one transaction. The work may be run more than
+     * once, so it must not have effects outside the transaction.
+     *
+     * @param   work    The work
+     */
+    void execute(final Consumer<S> work) {
+        this.logger.entry(work);
+
+        final var deadline = System.nanoTime() + this.timeLimit.toNanos();
+
+        int attempt = 0;
+
+        try (final var session = this.sessionFactory.open()) {
+            transaction:
+            while (true) {
+                session.startTransaction();
+
+                try {
+                    work.accept(session.getHandle());
+                } catch (final RuntimeException re) {
+                    this.abort(session);
+
+                    if (hasLabel(re, MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL) && System.nanoTime() < deadline) {
+                        this.transactionRetries.increment();
+                        this.backOff(++attempt, deadline);
+
+                        continue;
+                    }
+
+                    throw re;
+                }
+
+                while (true) {
+                    final var start = System.nanoTime();
+
+                    try {
+                        session.commitTransaction();
+
+                        final var elapsed = System.nanoTime() - start;
+
+                        this.commits.increment();
+                        this.commitNanos.add(elapsed);
+                        this.maxCommitNanos.accumulate(elapsed);
+
+                        break transaction;
+                    } catch (final RuntimeException re) {
+                        if (System.nanoTime() < deadline) {
+                            if (hasLabel(re, MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL)) {
+                                this.commitRetries.increment();
+                                this.backOff(++attempt, deadline);
+
+                                continue;
+                            }
+
+                            if (hasLabel(re, MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                                this.aborts.increment();
+                                this.transactionRetries.increment();
+                                this.backOff(++attempt, deadline);
+
+                                continue transaction;
+                            }
+                        }
+
+                        this.aborts.increment();
+
+                        throw re;
+                    }
+                }
+            }
+        }
+
+        this.logger.exit();
+    }
+
+    private void abort(final TransactionSession<S> session) {
+        this.aborts.increment();
+
+        try {
+            session.abortTransaction();
+        } catch (final RuntimeException re) {
+            this.logger.warn("Abort failed: {}", re.getMessage());
+        }
+    }
+
+    /*
+     * A short, jittered pause before a retry so that a commit that
+     * timed out or a transaction that conflicted is not retried
+     * straight into the same condition. It never sleeps past the
+     * time limit.
+     */
+    private void backOff(final int attempt, final long deadline) {
+        final var pause = TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(1L << Math.min(attempt, 7)));
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(Math.min(pause, deadline - System.nanoTime()));
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean hasLabel(final RuntimeException re, final String label) {
+        return re instanceof MongoException me && me.hasErrorLabel(label);
+    }
+
+    long getCommits() {
+        return this.commits.sum();
+    }
+
+    long getAborts() {
+        return this.aborts.sum();
+    }
+
+    double getAbortRate() {
+        final var total = this.commits.sum() + this.aborts.sum();
+
+        return total == 0 ? 0 : (double) this.aborts.sum() / total;
+    }
+
+    double getAverageCommitMillis() {
+        final var commitCount = this.commits.sum();
+
+        return commitCount == 0 ? 0 : this.commitNanos.sum() / (commitCount * 1_000_000.0);
+    }
+
+    void logMetrics() {
+        this.logger.entry();
+
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("Transactions committed: {}", this.commits.sum());
+            this.logger.info("Transactions aborted: {}", this.aborts.sum());
+            this.logger.info("Abort rate: {}", String.format("%.3f", this.getAbortRate()));
+            this.logger.info("Transient transaction retries: {}", this.transactionRetries.sum());
+            this.logger.info("Unknown commit result retries: {}", this.commitRetries.sum());
+            this.logger.info("Commit latency: {} ms average, {} ms maximum",
+                    String.format("%.3f", this.getAverageCommitMillis()),
+                    String.format("%.3f", this.maxCommitNanos.get() / 1_000_000.0));
+        }
+
+        this.logger.exit();
+    }
+
+    static final class MongoTransactionSession implements TransactionSession<ClientSession> {
+        private static final TransactionOptions TRANSACTION_OPTIONS = TransactionOptions.builder()
+                .readConcern(ReadConcern.SNAPSHOT)
+                .writeConcern(WriteConcern.MAJORITY)
+                .build();
+
+        // Transactions are committed and aborted by commands on the admin database
+
+        private static final MongoNamespace ADMIN = new MongoNamespace("admin", "$cmd");
+
+        private final ClientSession clientSession;
+
+        private MongoTransactionSession(final MongoClient mongoClient) {
+            final ObservableSubscriber<ClientSession> subscriber = new OperationSubscriber<>();
+
+            mongoClient.startSession().subscribe(subscriber);
+
+            this.clientSession = subscriber.first();
+        }
+
+        @Override
+        public ClientSession getHandle() {
+            return this.clientSession;
+        }
+
+        @Override
+        public void startTransaction() {
+            this.clientSession.startTransaction(TRANSACTION_OPTIONS);
+        }
+
+        @Override
+        public void commitTransaction() {
+            final ObservableSubscriber<Void> subscriber = new OperationSubscriber<>(AdmissionControl.Budget.WRITE);
+
+            subscriber.recording(ADMIN, "commitTransaction", null, 0);
+
+            this.clientSession.commitTransaction().subscribe(subscriber);
+
+            subscriber.await();
+        }
+
+        @Override
+        public void abortTransaction() {
+            final ObservableSubscriber<Void> subscriber = new OperationSubscriber<>(AdmissionControl.Budget.WRITE);
+
+            subscriber.recording(ADMIN, "abortTransaction", null, 0);
+
+            this.clientSession.abortTransaction().subscribe(subscriber);
+
+            subscriber.await();
+        }
+
+        @Override
+        public void close() {
+            this.clientSession.close();
+        }
+    }
+
+    /**
+     * An in-process stand-in for a transactional collection. Writes
+     * are staged per transaction and applied atomically on commit.
+     * Commits fail at the configured rates with a transient error
+     * (nothing applied) or an unknown commit result (the commit may
+     * or may not have been applied, and a retry is idempotent).
+     */
+    static final class LocalTransactionStore {
+        private final Map<Object, Document> documents = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final double transientErrorRate;
+        private final double unknownCommitResultRate;
+        private final long commitDelayMicros;
+
+        LocalTransactionStore(final double transientErrorRate,
+                              final double unknownCommitResultRate,
+                              final long commitDelayMicros) {
+            super();
+
+            this.transientErrorRate = transientErrorRate;
+            this.unknownCommitResultRate = unknownCommitResultRate;
+            this.commitDelayMicros = commitDelayMicros;
+        }
+
+        SessionFactory<Map<Object, Document>> sessionFactory() {
+            return LocalSession::new;
+        }
+
+        Map<Object, Document> getDocuments() {
+            return java.util.Collections.unmodifiableMap(this.documents);
+        }
+
+        private final class LocalSession implements TransactionSession<Map<Object, Document>> {
+            private Map<Object, Document> staged = new HashMap<>();
+            private boolean committed;
+
+            @Override
+            public Map<Object, Document> getHandle() {
+                return this.staged;
+            }
+
+            @Override
+            public void startTransaction() {
+                this.staged = new HashMap<>();
+                this.committed = false;
+            }
+
+            @Override
+            public void commitTransaction() {
+                final var random = ThreadLocalRandom.current();
+
+                if (!this.committed && random.nextDouble() < transientErrorRate)
+                    throw error("Simulated transient transaction error", MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+
+                if (!this.committed) {
+                    lock.lock();
+
+                    try {
+                        if (commitDelayMicros > 0)
+                            TimeUnit.MICROSECONDS.sleep(commitDelayMicros);
+
+                        documents.putAll(this.staged);
+
+                        this.committed = true;
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+
+                        throw error("Interrupted during commit", MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+
+                if (random.nextDouble() < unknownCommitResultRate)
+                    throw error("Simulated unknown commit result", MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL);
+            }
+
+            @Override
+            public void abortTransaction() {
+                this.staged.clear();
+            }
+
+            @Override
+            public void close() {
+                this.staged = new HashMap<>();
+            }
+
+            private static MongoException error(final String message, final String label) {
+                final var exception = new MongoException(message);
+
+                exception.addLabel(label);
+
+                return exception;
+            }
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)UpdateAndReplace.java 0.10.0  10/19/2026
  * (#)UpdateAndReplace.java 0.3.0   12/21/2023
  *
  * @author    Jonathan Parker
- * @version   0.3.0
+ * @version   0.10.0
  * @since     0.3.0
  *
  * MIT License
  *
- * Copyright (c) 2023 Jonathan M. Parker
+ * Copyright (c) 2023, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -50,15 +51,22 @@ import org.slf4j.ext.XLogger;
 
 final class UpdateAndReplace {
     enum UpdateType {
-        ONE,
-        MANY,
-        REPLACE
+        ONE("updateOne"),
+        MANY("updateMany"),
+        REPLACE("replaceOne");
+
+        private final String operation;
+
+        UpdateType(final String operation) {
+            this.operation = operation;
+        }
     }
 
     private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final VersionedUpdater versionedUpdater;
 
     UpdateAndReplace(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -67,6 +75,10 @@ final class UpdateAndReplace {
 
         this.dbName = properties.getProperty("mongodb.update.db", "training");
         this.collectionName = properties.getProperty("mongodb.update.collection", "colors");
+
+        final var maxAttempts = Integer.parseInt(properties.getProperty("mongodb.update.versioned.maxAttempts", "5"));
+
+        this.versionedUpdater = new VersionedUpdater(mongoClient, this.dbName, this.collectionName, maxAttempts);
     }
 
     void run() {
@@ -91,6 +103,14 @@ final class UpdateAndReplace {
 
         this.replaceOneDocument();
 
+        Helpers.printOneDocument(this.mongoClient,
+                this.dbName,
+                this.collectionName,
+                Filters.eq("color", "pink"),
+                this.logger);
+
+        this.versionedUpdate();
+
         Helpers.printOneDocument(this.mongoClient,
                 this.dbName,
                 this.collectionName,
@@ -160,13 +180,43 @@ final class UpdateAndReplace {
         this.logger.exit();
     }
 
+    private void versionedUpdate() {
+        this.logger.entry();
+
+        // Two concurrent read-modify-write updates; neither increment is lost
+
+        final var filter = Filters.eq("color", "pink");
+
+        final Runnable increment = () -> this.versionedUpdater.update(filter, document ->
+                document.append("quantity", document.getInteger("quantity", 0) + 5));
+
+        final var t1 = new Thread(increment);
+        final var t2 = new Thread(increment);
+
+        t1.start();
+        t2.start();
+
+        try {
+            t1.join();
+            t2.join();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.versionedUpdater.logMetrics();
+
+        this.logger.exit();
+    }
+
     private void update(final UpdateType updateType, final Bson filter, final Document document) {
         this.logger.entry(updateType, filter, document);
 
         final var database = this.mongoClient.getDatabase(this.dbName);
         final var collection = database.getCollection(this.collectionName);
 
-        final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        updateSubscriber.recording(collection.getNamespace(), updateType.operation, filter, 0);
 
         if (updateType == UpdateType.REPLACE)
             collection.replaceOne(filter, document).subscribe(updateSubscriber);
@@ -190,7 +240,9 @@ final class UpdateAndReplace {
         final var database = this.mongoClient.getDatabase(this.dbName);
         final var collection = database.getCollection(this.collectionName);
 
-        final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<UpdateResult> updateSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        updateSubscriber.recording(collection.getNamespace(), updateType.operation, filter, 0);
 
         if (updateType == UpdateType.MANY)
             collection.updateMany(filter, update).subscribe(updateSubscriber);
@@ -1,16 +1,17 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)UpdateArrays.java 0.10.0  10/19/2026
  * (#)UpdateArrays.java 0.7.0   01/09/2024
  * (#)UpdateArrays.java 0.5.0   01/08/2024
  *
  * @author    Jonathan Parker
- * @version   0.7.0
+ * @version   0.10.0
  * @since     0.5.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -41,6 +42,8 @@ import com.mongodb.client.result.InsertOneResult;
 
 import com.mongodb.reactivestreams.client.MongoClient;
 
+import java.time.Duration;
+
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -59,6 +62,9 @@ final class UpdateArrays {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final String bucketCollectionName;
+    private final int bucketMaxElements;
+    private final Duration bucketSpan;
 
     UpdateArrays(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -67,6 +73,9 @@ final class UpdateArrays {
 
         this.dbName = properties.getProperty("mongodb.update.db", "training");
         this.collectionName = properties.getProperty("mongodb.update.collection", "colors");
+        this.bucketCollectionName = properties.getProperty("mongodb.update.bucket.collection", "colorBuckets");
+        this.bucketMaxElements = Integer.parseInt(properties.getProperty("mongodb.update.bucket.maxElements", "100"));
+        this.bucketSpan = Duration.ofSeconds(Long.parseLong(properties.getProperty("mongodb.update.bucket.spanSeconds", "3600")));
     }
 
     void run() {
@@ -90,9 +99,13 @@ final class UpdateArrays {
             this.updateMultipleArrayElements(id);
             this.printOneDocument(id);
 
+            this.batchedArrayUpdates(id);
+
             this.deleteData(id);
         }
 
+        this.appendQuantitiesBucketed();
+
         this.logger.info("Ending update arrays operations...");
         this.logger.exit();
     }
@@ -110,7 +123,9 @@ final class UpdateArrays {
         final var collection = database.getCollection(this.collectionName);
         final var document = new Document("color", "green").append("quantities", quantities);
 
-        final ObservableSubscriber<InsertOneResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertOneResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "insertOne", null, 1);
 
         collection.insertOne(document).subscribe(subscriber);
 
@@ -142,7 +157,9 @@ final class UpdateArrays {
         final var options = new FindOneAndUpdateOptions()
                 .returnDocument(ReturnDocument.AFTER);
 
-        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
 
         collection.findOneAndUpdate(filter, update, options).subscribe(subscriber);
 
@@ -180,7 +197,9 @@ final class UpdateArrays {
         final var options = new FindOneAndUpdateOptions()
                 .returnDocument(ReturnDocument.AFTER);
 
-        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
 
         collection.findOneAndUpdate(filter, update, options).subscribe(subscriber);
 
@@ -210,10 +229,14 @@ final class UpdateArrays {
         final var options = new FindOneAndUpdateOptions()
                 .returnDocument(ReturnDocument.AFTER);
 
-        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
 
         collection.findOneAndUpdate(filter, update, options).subscribe(subscriber);
 
+        subscriber.await();
+
         if (subscriber.getError() == null) {
             final var document = subscriber.first();
 
@@ -239,7 +262,9 @@ final class UpdateArrays {
                 .returnDocument(ReturnDocument.AFTER)
                 .arrayFilters(List.of(smallerFilter));
 
-        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<Document> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "findOneAndUpdate", filter, 0);
 
         collection.findOneAndUpdate(filter, update, options).subscribe(subscriber);
 
@@ -257,6 +282,55 @@ final class UpdateArrays {
         this.logger.exit();
     }
 
+    private void batchedArrayUpdates(final ObjectId objectId) {
+        this.logger.entry(objectId);
+
+        final var batch = new ArrayUpdateBatch(this.mongoClient,
+                this.dbName,
+                this.collectionName,
+                Filters.eq("_id", objectId));
+
+        batch.push("quantities", List.of(40, 45), -6)
+                .push("quantities", List.of(50), -6)
+                .incAt("quantities", 0, 1)
+                .incAt("quantities", 0, 1)
+                .incWhere("quantities", identifier -> Filters.lt(identifier, 30), 5);
+
+        this.logger.info("The array changes compile to {} update(s)", batch.size());
+
+        try {
+            final var document = batch.apply(true);
+
+            document.ifPresent(d -> this.logger.info("Quantities: {}", d.get("quantities")));
+        } catch (final RuntimeException re) {
+            this.logger.error(re.getMessage());
+        }
+
+        this.logger.exit();
+    }
+
+    private void appendQuantitiesBucketed() {
+        this.logger.entry();
+
+        final var series = new BucketedSeries(this.mongoClient,
+                this.dbName,
+                this.bucketCollectionName,
+                this.bucketMaxElements,
+                this.bucketSpan);
+
+        try {
+            for (final var quantity : List.of(8, 12, 18, 26, 40, 45))
+                series.append("green", quantity);
+
+            series.read("green").forEach(entry -> this.logger.info("Quantity: {} at {}", entry.get("v"), entry.get("t")));
+            series.delete("green");
+        } catch (final RuntimeException re) {
+            this.logger.error(re.getMessage());
+        }
+
+        this.logger.exit();
+    }
+
     private void deleteData(final ObjectId objectId) {
         this.logger.entry(objectId);
 
@@ -264,7 +338,9 @@ final class UpdateArrays {
         final var collection = database.getCollection(this.collectionName);
         final var filter = Filters.eq("_id", objectId);
 
-        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "deleteOne", filter, 0);
 
         collection.deleteOne(filter).subscribe(subscriber);
 
@@ -1,15 +1,16 @@
 package net.jmp.demo.mongodb.atlas.async;
 
 /*
+ * (#)Upsert.java   0.10.0  10/19/2026
  * (#)Upsert.java   0.6.0   01/09/2024
  *
  * @author    Jonathan Parker
- * @version   0.6.0
+ * @version   0.10.0
  * @since     0.6.0
  *
  * MIT License
  *
- * Copyright (c) 2024 Jonathan M. Parker
+ * Copyright (c) 2024, 2026 Jonathan M. Parker
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -34,7 +35,6 @@ import com.mongodb.MongoBulkWriteException;
 
 import com.mongodb.client.model.*;
 
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -53,6 +53,7 @@ final class Upsert {
     private final MongoClient mongoClient;
     private final String dbName;
     private final String collectionName;
+    private final ChunkedDelete chunkedDelete;
 
     Upsert(final Properties properties, final MongoClient mongoClient) {
         super();
@@ -61,6 +62,8 @@ final class Upsert {
 
         this.dbName = properties.getProperty("mongodb.upsert.db", "training");
         this.collectionName = properties.getProperty("mongodb.upsert.collection", "colors");
+
+        this.chunkedDelete = new ChunkedDelete(properties, mongoClient, this.dbName, this.collectionName);
     }
 
     void run() {
@@ -113,7 +116,9 @@ final class Upsert {
                 new Document(color, "black").append(quantity, 8)
         );
 
-        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<InsertManyResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "insertMany", null, documents.size());
 
         collection.insertMany(documents).subscribe(subscriber);
 
@@ -145,7 +150,9 @@ final class Upsert {
         final var update = Updates.inc("quantity", 10);
         final var options = new UpdateOptions().upsert(true);
 
-        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
 
         collection.updateOne(filter, update, options).subscribe(subscriber);
 
@@ -169,7 +176,9 @@ final class Upsert {
         final var update = Updates.inc("quantity", 15);
         final var options = new UpdateOptions().upsert(true);
 
-        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>();
+        final ObservableSubscriber<UpdateResult> subscriber = new OperationSubscriber<>(collection.getNamespace());
+
+        subscriber.recording(collection.getNamespace(), "updateOne", filter, 0);
 
         collection.updateOne(filter, update, options).subscribe(subscriber);
 
@@ -187,21 +196,7 @@ final class Upsert {
     private void deleteData() {
         this.logger.entry();
 
-        final var database = this.mongoClient.getDatabase(this.dbName);
-        final var collection = database.getCollection(this.collectionName);
-        final var filter = Filters.empty();
-
-        final ObservableSubscriber<DeleteResult> subscriber = new OperationSubscriber<>();
-
-        collection.deleteMany(filter).subscribe(subscriber);
-
-        subscriber.await();
-
-        if (subscriber.getError() == null) {
-            this.logger.info("{} document(s) were deleted", subscriber.first().getDeletedCount());
-        } else {
-            this.logger.catching(subscriber.getError());
-        }
+        this.chunkedDelete.deleteAll();
 
         this.logger.exit();
     }
@@ -0,0 +1,224 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)VersionedUpdater.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.client.model.Filters;
+
+import com.mongodb.client.result.UpdateResult;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+
+import java.util.ConcurrentModificationException;
+import java.util.Optional;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import java.util.function.UnaryOperator;
+
+import org.bson.BsonDocumentReader;
+import org.bson.Document;
+
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+
+import org.bson.conversions.Bson;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.ext.XLogger;
+
+/**
+ * Read-modify-write updates guarded by a version field instead of a
+ * lock or a transaction. The replacement only matches if the version
+ * is still the one that was read; when another writer got there
+ * first the document is re-read and the transform re-applied, up to
+ * a bounded number of attempts.
+ */
+final class VersionedUpdater {
+    static final String VERSION = "version";
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final XLogger logger = new XLogger(LoggerFactory.getLogger(this.getClass().getName()));
+    private final MongoClient mongoClient;
+    private final String dbName;
+    private final String collectionName;
+    private final int maxAttempts;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    VersionedUpdater(final MongoClient mongoClient,
+                     final String dbName,
+                     final String collectionName,
+                     final int maxAttempts) {
+        super();
+
+        if (maxAttempts <= 0)
+            throw new IllegalArgumentException("The maximum number of attempts must be positive: " + maxAttempts);
+
+        this.mongoClient = mongoClient;
+        this.dbName = dbName;
+        this.collectionName = collectionName;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Apply a transform to the document selected by the filter.
+     * The transform receives a copy of the current document and may
+     * be called more than once, so it must not have side effects.
+     *
+     * @param   filter      Selects the document to update
+     * @param   transform   Produces the new document from the current one
+     * @return              The document as written, or empty if none matched the filter
+     * @throws              java.util.ConcurrentModificationException when every attempt conflicted
+     */
+    Optional<Document> update(final Bson filter, final UnaryOperator<Document> transform) {
+        Trace.entry(this.logger, filter, transform);
+
+        final var database = this.mongoClient.getDatabase(this.dbName);
+        final var collection = database.getCollection(this.collectionName);
+
+        Optional<Document> result = Optional.empty();
+
+        for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+            this.attempts.increment();
+
+            final ObservableSubscriber<Document> findSubscriber = new OperationSubscriber<>();
+
+            findSubscriber.recording(collection.getNamespace(), "findFirst", filter, 1);
+
+            collection.find(filter).first().subscribe(findSubscriber);
+
+            final var current = findSubscriber.first();
+
+            if (current == null)
+                break;
+
+            final var version = current.get(VERSION) instanceof Number number ? number.longValue() : null;
+            final var replacement = transform.apply(copy(current));
+
+            replacement.put("_id", current.get("_id"));
+            replacement.put(VERSION, version == null ? 1L : version + 1);
+
+            final var versionFilter = Filters.and(
+                    Filters.eq("_id", current.get("_id")),
+                    version == null ? Filters.exists(VERSION, false) : Filters.eq(VERSION, version)
+            );
+
+            final ObservableSubscriber<UpdateResult> replaceSubscriber = new OperationSubscriber<>(collection.getNamespace());
+
+            replaceSubscriber.recording(collection.getNamespace(), "replaceOne", versionFilter, 0);
+
+            collection.replaceOne(versionFilter, replacement).subscribe(replaceSubscriber);
+
+            if (replaceSubscriber.first().getMatchedCount() == 1) {
+                this.updates.increment();
+
+                result = Optional.of(replacement);
+
+                break;
+            }
+
+            this.conflicts.increment();
+
+            this.logger.debug("Version {} of {} was superseded; attempt {} of {}", version, current.get("_id"), attempt, this.maxAttempts);
+
+            if (attempt == this.maxAttempts) {
+                this.exhausted.increment();
+
+                throw new ConcurrentModificationException("Document " + current.get("_id") + " kept changing after " + attempt + " attempt(s)");
+            }
+
+            this.backOff(attempt);
+        }
+
+        Trace.exit(this.logger, result);
+
+        return result;
+    }
+
+    long getAttempts() {
+        return this.attempts.sum();
+    }
+
+    long getConflicts() {
+        return this.conflicts.sum();
+    }
+
+    long getUpdates() {
+        return this.updates.sum();
+    }
+
+    long getExhausted() {
+        return this.exhausted.sum();
+    }
+
+    double getConflictRate() {
+        final var attemptCount = this.attempts.sum();
+
+        return attemptCount == 0 ? 0 : (double) this.conflicts.sum() / attemptCount;
+    }
+
+    void logMetrics() {
+        Trace.entry(this.logger);
+
+        if (this.logger.isInfoEnabled()) {
+            this.logger.info("Versioned update attempts: {}", this.getAttempts());
+            this.logger.info("Versioned updates applied: {}", this.getUpdates());
+            this.logger.info("Version conflicts: {}", this.getConflicts());
+            this.logger.info("Updates that exhausted their attempts: {}", this.getExhausted());
+            this.logger.info("Conflict rate: {}", String.format("%.3f", this.getConflictRate()));
+        }
+
+        Trace.exit(this.logger);
+    }
+
+    private static Document copy(final Document document) {
+        return DOCUMENT_CODEC.decode(new BsonDocumentReader(document.toBsonDocument()), DecoderContext.builder().build());
+    }
+
+    /*
+     * A short, jittered pause so that writers that just collided
+     * do not collide again on the next attempt.
+     */
+    private void backOff(final int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1L << Math.min(attempt, 6)));
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
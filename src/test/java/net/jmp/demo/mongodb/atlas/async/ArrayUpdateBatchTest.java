@@ -0,0 +1,134 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)ArrayUpdateBatchTest.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.mongodb.client.model.Filters;
+
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compiles batches without a server and checks how their changes are
+ * split into updates, starting with the sequence UpdateArrays sends.
+ */
+final class ArrayUpdateBatchTest {
+    @Test
+    void theUpdateArraysSequenceCompilesToThreeUpdates() {
+        final var batch = batch()
+                .push("quantities", List.of(40, 45), -6)
+                .push("quantities", List.of(50), -6)
+                .incAt("quantities", 0, 1)
+                .incAt("quantities", 0, 1)
+                .incWhere("quantities", identifier -> Filters.lt(identifier, 30), 5);
+
+        final var compiled = batch.compile();
+
+        assertEquals(3, batch.size());
+        assertEquals(3, compiled.size());
+
+        /* Pushes with the same $slice merge into one $each */
+
+        assertEquals(new Document("$push", new Document("quantities", new Document("$each", List.of(40, 45, 50)).append("$slice", -6))),
+                compiled.get(0).update());
+        assertTrue(compiled.get(0).arrayFilters().isEmpty());
+
+        /* An element of the array being pushed to waits for the next update, where its increments fold */
+
+        assertEquals(new Document("$inc", new Document("quantities.0", 2)), compiled.get(1).update());
+        assertEquals(Integer.class, compiled.get(1).update().get("$inc", Document.class).get("quantities.0").getClass());
+
+        /* A filtered update of the same array may not share an update with a positional one */
+
+        assertEquals(new Document("$inc", new Document("quantities.$[e0]", 5)), compiled.get(2).update());
+        assertEquals(List.of(BsonDocument.parse("{e0: {$lt: 30}}")),
+                compiled.get(2).arrayFilters().stream().map(filter -> filter.toBsonDocument()).toList());
+    }
+
+    @Test
+    void pushesWithADifferentSliceStartANewUpdate() {
+        final var compiled = batch()
+                .push("quantities", List.of(40), -6)
+                .push("quantities", List.of(50), -5)
+                .compile();
+
+        assertEquals(2, compiled.size());
+        assertEquals(new Document("$push", new Document("quantities", new Document("$each", List.of(40)).append("$slice", -6))),
+                compiled.get(0).update());
+        assertEquals(new Document("$push", new Document("quantities", new Document("$each", List.of(50)).append("$slice", -5))),
+                compiled.get(1).update());
+    }
+
+    @Test
+    void differentElementsAndArraysShareAnUpdate() {
+        final var compiled = batch()
+                .incAt("quantities", 0, 1)
+                .setAt("quantities", 1, 7)
+                .push("sizes", List.of(3))
+                .compile();
+
+        assertEquals(1, compiled.size());
+        assertEquals(new Document("$inc", new Document("quantities.0", 1))
+                        .append("$set", new Document("quantities.1", 7))
+                        .append("$push", new Document("sizes", new Document("$each", List.of(3)))),
+                compiled.getFirst().update());
+    }
+
+    @Test
+    void incrementsFoldIntoALongOnlyWhenTheyMust() {
+        final var compiled = batch()
+                .incAt("ints", 0, 1)
+                .incAt("ints", 0, 2)
+                .incAt("overflows", 0, Integer.MAX_VALUE)
+                .incAt("overflows", 0, 1)
+                .incAt("mixed", 0, 1)
+                .incAt("mixed", 0, 2L)
+                .compile();
+
+        assertEquals(1, compiled.size());
+
+        final var inc = compiled.getFirst().update().get("$inc", Document.class);
+
+        assertEquals(3, inc.get("ints.0"));
+        assertEquals(Integer.MAX_VALUE + 1L, inc.get("overflows.0"));
+        assertEquals(3L, inc.get("mixed.0"));
+    }
+
+    private static ArrayUpdateBatch batch() {
+        return new ArrayUpdateBatch(null, "db", "collection", Filters.eq("_id", 1));
+    }
+}
@@ -0,0 +1,296 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)CacheInvalidationBusTest.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoNamespace;
+
+import com.mongodb.client.model.Filters;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import java.lang.reflect.Proxy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Duration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.function.BooleanSupplier;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the CacheInvalidationBus through a LocalChangeStream.
+ */
+final class CacheInvalidationBusTest {
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @TempDir
+    Path directory;
+
+    private CacheInvalidationBus.LocalChangeStream stream;
+    private NearCache cache;
+    private Path tokenFile;
+
+    @BeforeEach
+    void setUp() {
+        this.stream = new CacheInvalidationBus.LocalChangeStream();
+        this.cache = new NearCache(true, 100, 1 << 20, Duration.ofMinutes(1));
+        this.tokenFile = this.directory.resolve("token.json");
+    }
+
+    @Test
+    void changesInvalidateTheirNamespace() {
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            this.stream.emit("insert", "training", "colors");
+            this.stream.emit("update", "training", "colors");
+            this.stream.emit("delete", "training", "food");
+
+            assertEquals(3, bus.getEvents());
+            assertEquals(3, bus.getInvalidations());
+
+            /* The only flush is the one made because no token was saved */
+
+            assertEquals(1, bus.getFlushes());
+        }
+    }
+
+    @Test
+    void aChangeRemovesTheCachedDocumentsOfItsNamespace() {
+        final var loads = new AtomicInteger();
+        final var colors = collection("colors", new Document("_id", 1).append("color", "green"), loads);
+        final var food = collection("food", new Document("_id", 2).append("food", "pear"), loads);
+
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            this.cache.findFirst(colors, Filters.eq("_id", 1));
+            this.cache.findFirst(food, Filters.eq("_id", 2));
+            this.cache.findFirst(colors, Filters.eq("_id", 1));
+            this.cache.findFirst(food, Filters.eq("_id", 2));
+
+            assertEquals(2, loads.get());
+
+            this.stream.emit("update", "training", "colors");
+
+            assertEquals(new Document("_id", 1).append("color", "green"), this.cache.findFirst(colors, Filters.eq("_id", 1)));
+            assertEquals(3, loads.get());
+
+            /* Another namespace keeps its entry */
+
+            this.cache.findFirst(food, Filters.eq("_id", 2));
+
+            assertEquals(3, loads.get());
+        }
+    }
+
+    @Test
+    void aStreamOpenedWithoutATokenSeesChangesMadeWhileItOpens() {
+        // The change lands after the operation time is read and before the stream opens
+
+        final var source = new CacheInvalidationBus.ChangeSource() {
+            @Override
+            public Publisher<ChangeStreamDocument<Document>> watch(final BsonDocument resumeToken, final BsonTimestamp startAtOperationTime) {
+                return CacheInvalidationBusTest.this.stream.watch(resumeToken, startAtOperationTime);
+            }
+
+            @Override
+            public BsonTimestamp operationTime() {
+                final var operationTime = CacheInvalidationBusTest.this.stream.operationTime();
+
+                CacheInvalidationBusTest.this.stream.emit("update", "training", "colors");
+
+                return operationTime;
+            }
+        };
+
+        try (final var bus = new CacheInvalidationBus(source, this.cache, this.tokenFile, 60_000)) {
+            bus.start();
+
+            assertEquals(1, bus.getEvents());
+            assertEquals(1, bus.getInvalidations());
+            assertEquals(1, bus.getFlushes());
+        }
+    }
+
+    @Test
+    void invalidateEventsFlushAndReopenTheStream() {
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            this.stream.emit("invalidate", "training", "colors");
+
+            assertEquals(2, bus.getFlushes());
+
+            waitFor(() -> bus.getRestarts() == 1);
+
+            this.stream.emit("update", "training", "colors");
+
+            waitFor(() -> bus.getEvents() == 2);
+
+            assertEquals(1, bus.getInvalidations());
+        }
+    }
+
+    @Test
+    void theTokenIsCheckpointedWhileRunning() throws Exception {
+        try (final var bus = this.newBus(10)) {
+            bus.start();
+
+            assertFalse(Files.exists(this.tokenFile));
+
+            this.stream.emit("update", "training", "colors", new BsonDocument("_id", new BsonString("a")));
+
+            waitFor(() -> Files.exists(this.tokenFile));
+
+            assertEquals("0", BsonDocument.parse(Files.readString(this.tokenFile)).getString("_data").getValue());
+        }
+    }
+
+    @Test
+    void aRestartResumesAfterTheSavedToken() {
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            this.stream.emit("update", "training", "colors");
+            this.stream.emit("update", "training", "colors");
+        }
+
+        /* Changes made while no bus was running */
+
+        this.stream.emit("update", "training", "colors");
+        this.stream.emit("delete", "training", "food");
+
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            assertEquals(2, bus.getEvents());
+            assertEquals(2, bus.getInvalidations());
+            assertEquals(0, bus.getFlushes());
+        }
+    }
+
+    @Test
+    void anUnreadableTokenFlushesTheCache() throws Exception {
+        Files.writeString(this.tokenFile, "not a token");
+
+        try (final var bus = this.newBus(60_000)) {
+            bus.start();
+
+            assertEquals(1, bus.getFlushes());
+        }
+
+        /* No event arrived, so closing removes the unreadable file */
+
+        assertFalse(Files.exists(this.tokenFile));
+    }
+
+    private CacheInvalidationBus newBus(final long checkpointIntervalMillis) {
+        return new CacheInvalidationBus(this.stream, this.cache, this.tokenFile, checkpointIntervalMillis);
+    }
+
+    /* A collection whose find(...).first() answers with the document, counting each load */
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> collection(final String collectionName, final Document document, final AtomicInteger loads) {
+        final var namespace = new MongoNamespace("training", collectionName);
+
+        final Publisher<Document> first = subscriber -> subscriber.onSubscribe(new Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(final long n) {
+                if (!this.done) {
+                    this.done = true;
+
+                    loads.incrementAndGet();
+
+                    subscriber.onNext(document);
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                this.done = true;
+            }
+        });
+
+        final var find = Proxy.newProxyInstance(FindPublisher.class.getClassLoader(), new Class<?>[] {FindPublisher.class}, (proxy, method, args) -> {
+            if (method.getName().equals("first"))
+                return first;
+
+            if (method.getReturnType() == FindPublisher.class)
+                return proxy;
+
+            throw new UnsupportedOperationException(method.getName());
+        });
+
+        return (MongoCollection<Document>) Proxy.newProxyInstance(MongoCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getNamespace" -> namespace;
+            case "find" -> find;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private static void waitFor(final BooleanSupplier condition) {
+        final var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the bus");
+
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)HedgedReaderTest.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+
+import com.mongodb.ReadPreference;
+
+import java.time.Duration;
+
+import org.bson.Document;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the HedgedReader with LocalLookup stand-ins.
+ */
+final class HedgedReaderTest {
+    private static final Duration DEADLINE = Duration.ofSeconds(5);
+
+    private static final Document FAST = new Document("answer", "fast");
+    private static final Document SLOW = new Document("answer", "slow");
+
+    @Test
+    void aboutOneLookupInTwentyIsHedged() {
+        final var lookup = new HedgedReader.LocalLookup(FAST, Duration.ofMillis(5), Duration.ofMillis(200), 0.05);
+        final var reader = newReader(Duration.ofMillis(50));
+        final var lookups = 400;
+
+        for (int i = 0; i < lookups; i++)
+            assertEquals(FAST, reader.first(lookup, DEADLINE));
+
+        final var rate = (double) reader.getHedges() / reader.getRequests();
+
+        assertEquals(lookups, reader.getRequests());
+        assertTrue(rate > 0.01 && rate < 0.20, "Hedge rate " + rate);
+        assertTrue(reader.getHedgeWins() <= reader.getHedges());
+    }
+
+    @Test
+    void aHedgeThatAnswersFirstWins() {
+        final var slow = new HedgedReader.LocalLookup(SLOW, Duration.ofSeconds(1), Duration.ofSeconds(1), 0);
+        final var fast = new HedgedReader.LocalLookup(FAST, Duration.ofMillis(5), Duration.ofMillis(5), 0);
+        final var reader = newReader(Duration.ofMillis(10));
+
+        final var answer = reader.answer(readPreference -> ReadPreference.primary().equals(readPreference)
+                ? slow.first(readPreference)
+                : fast.first(readPreference), DEADLINE);
+
+        assertEquals(FAST, answer.document());
+        assertTrue(answer.hedged());
+        assertEquals(1, reader.getHedges());
+        assertEquals(1, reader.getHedgeWins());
+    }
+
+    @Test
+    void aPrimaryThatAnswersBeforeTheDelayIsNotHedged() {
+        final var fast = new HedgedReader.LocalLookup(FAST, Duration.ofMillis(5), Duration.ofMillis(5), 0);
+        final var reader = newReader(Duration.ofSeconds(1));
+
+        final var answer = reader.answer(fast, DEADLINE);
+
+        assertEquals(FAST, answer.document());
+        assertFalse(answer.hedged());
+        assertEquals(0, reader.getHedges());
+    }
+
+    private static HedgedReader newReader(final Duration initialDelay) {
+        return new HedgedReader(true,
+                ReadPreference.primary(),
+                ReadPreference.secondaryPreferred(),
+                95,
+                1000,
+                initialDelay,
+                Duration.ofMillis(5));
+    }
+}
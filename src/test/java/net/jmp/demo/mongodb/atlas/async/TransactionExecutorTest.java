@@ -0,0 +1,190 @@
+package net.jmp.demo.mongodb.atlas.async;
+
+/*
+ * (#)TransactionExecutorTest.java 0.10.0  10/19/2026
+ *
+ * @author    Jonathan Parker
+ * @version   0.10.0
+ * @since     0.10.0
+ *
+ * MIT License
+ *
+ * Copyright (c) 2026 Jonathan M. Parker
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+import com.mongodb.MongoException;
+
+import java.time.Duration;
+
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the TransactionExecutor through the LocalTransactionStore,
+ * which injects TransientTransactionError and
+ * UnknownTransactionCommitResult failures on commit.
+ */
+final class TransactionExecutorTest {
+    private static final Duration TIME_LIMIT = Duration.ofSeconds(30);
+
+    @Test
+    void transientCommitErrorsRetryTheTransaction() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0.5, 0, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, TIME_LIMIT);
+
+        submit(executor, 50);
+
+        executor.flush();
+
+        assertEquals(50, store.getDocuments().size());
+        assertEquals(10, executor.getCommits());
+    }
+
+    @Test
+    void unknownCommitResultsRetryTheCommit() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0, 0.5, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, TIME_LIMIT);
+
+        submit(executor, 50);
+
+        executor.flush();
+
+        assertEquals(50, store.getDocuments().size());
+        assertEquals(10, executor.getCommits());
+        assertEquals(0, executor.getAborts());
+    }
+
+    @Test
+    void persistentTransientErrorsGiveUpAtTheTimeLimit() {
+        final var store = new TransactionExecutor.LocalTransactionStore(1, 0, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, Duration.ofMillis(200));
+
+        final var exception = assertThrows(MongoException.class,
+                () -> executor.execute(handle -> put(handle, 1)));
+
+        assertTrue(exception.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL));
+        assertTrue(store.getDocuments().isEmpty());
+        assertEquals(0, executor.getCommits());
+    }
+
+    @Test
+    void persistentUnknownCommitResultsGiveUpAtTheTimeLimit() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0, 1, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, Duration.ofMillis(200));
+
+        final var exception = assertThrows(MongoException.class,
+                () -> executor.execute(handle -> put(handle, 1)));
+
+        assertTrue(exception.hasErrorLabel(MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL));
+
+        /* The outcome is unknown to the caller, but the store did apply it */
+
+        assertEquals(1, store.getDocuments().size());
+    }
+
+    @Test
+    void transientWorkErrorsRunTheWorkAgain() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0, 0, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, TIME_LIMIT);
+        final var invocations = new AtomicInteger();
+
+        executor.execute(handle -> {
+            if (invocations.incrementAndGet() == 1) {
+                final var exception = new MongoException("Write conflict");
+
+                exception.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+
+                throw exception;
+            }
+
+            put(handle, 1);
+        });
+
+        assertEquals(2, invocations.get());
+        assertEquals(1, executor.getCommits());
+        assertEquals(1, executor.getAborts());
+        assertEquals(1, store.getDocuments().size());
+    }
+
+    @Test
+    void otherWorkErrorsAreNotRetried() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0, 0, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, TIME_LIMIT);
+        final var invocations = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> executor.execute(handle -> {
+            invocations.incrementAndGet();
+
+            throw new IllegalStateException("Not retryable");
+        }));
+
+        assertEquals(1, invocations.get());
+        assertEquals(1, executor.getAborts());
+        assertTrue(store.getDocuments().isEmpty());
+    }
+
+    @Test
+    void aBatchThatFailsIsNotRunAgain() {
+        final var store = new TransactionExecutor.LocalTransactionStore(0, 0, 0);
+        final var executor = new TransactionExecutor<>(store.sessionFactory(), 5, TIME_LIMIT);
+        final var invocations = new AtomicInteger();
+
+        submit(executor, 4);
+
+        assertThrows(IllegalStateException.class, () -> executor.submit(handle -> {
+            invocations.incrementAndGet();
+
+            throw new IllegalStateException("Not retryable");
+        }));
+
+        /* The next batch commits without replaying the failed one */
+
+        submit(executor, 5);
+
+        executor.flush();
+
+        assertEquals(1, invocations.get());
+        assertEquals(1, executor.getCommits());
+        assertEquals(5, store.getDocuments().size());
+    }
+
+    private static void submit(final TransactionExecutor<Map<Object, Document>> executor, final int count) {
+        for (int i = 0; i < count; i++) {
+            final var id = i;
+
+            executor.submit(handle -> put(handle, id));
+        }
+    }
+
+    private static void put(final Map<Object, Document> handle, final int id) {
+        handle.put(id, new Document("_id", id).append("value", "item-" + id));
+    }
+}